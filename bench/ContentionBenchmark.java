@@ -0,0 +1,156 @@
+/**
+ * This class implements a standalone benchmark of the contention between the requests
+ * that change disjoint users. Each client registers its own user and, in parallel with
+ * the other ones, creates a post, reads it back from its blog and deletes it, so the
+ * requests never touch the same user or post and any slowdown comes from the server locks.
+ * It needs a running server and prints the requests served each second.
+ * Compile and run it from the root of the project:
+ *   javac -d out/bench -cp lib/gson-2.8.9.jar src/*.java bench/*.java
+ *   java -cp out/bench:lib/gson-2.8.9.jar ContentionBenchmark [host] [tcpPort] [registryPort] [clients] [iterations]
+ */
+
+import com.google.gson.JsonParser;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ContentionBenchmark {
+    private static final int REQUESTS_PER_ITERATION = 3; //post, blog and delete
+
+    public static void main(String []args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int tcpPort = args.length > 1 ? Integer.parseInt(args[1]) : 6666;
+        int registryPort = args.length > 2 ? Integer.parseInt(args[2]) : 7777;
+        int clients = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        int iterations = args.length > 4 ? Integer.parseInt(args[4]) : 200;
+
+        //Registers a user for each client, the usernames are unique for each run
+        Registry registry = LocateRegistry.getRegistry(host, registryPort);
+        RegisterInterface registerService = (RegisterInterface) registry.lookup("REGISTER-SERVICE");
+        String run = Long.toString(System.currentTimeMillis() % 1_000_000);
+
+        List<SocketChannel> channels = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            String username = "bench" + run + "_" + i;
+            registerService.register(username, "password", List.of("bench"));
+
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, tcpPort));
+            send(channel, "login " + username + " password");
+            if (readCode(channel) != 0) throw new IOException("Login of " + username + " failed");
+            readBody(channel);
+            channels.add(channel);
+        }
+
+        AtomicInteger errors = new AtomicInteger();
+        CyclicBarrier start = new CyclicBarrier(clients + 1);
+        List<Thread> threads = new ArrayList<>();
+        for (SocketChannel channel : channels) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < iterations; i++)
+                        if (!createAndDelete(channel)) errors.incrementAndGet();
+                } catch (Exception e) {
+                    System.err.println("Client failed: " + e.getMessage());
+                    errors.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        //Measures from when all the clients are ready
+        start.await();
+        long startTime = System.nanoTime();
+        for (Thread thread : threads)
+            thread.join();
+        long elapsed = Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+
+        long requests = (long) clients * iterations * REQUESTS_PER_ITERATION;
+        System.out.println("clients=" + clients + " requests=" + requests + " errors=" + errors.get() + " ms=" + elapsed + " requests/s=" + requests * 1000 / elapsed);
+
+        for (SocketChannel channel : channels) {
+            send(channel, "logout");
+            readCode(channel);
+            channel.close();
+        }
+    }
+
+    /**
+     * Creates a post, reads its id from the blog and deletes it
+     * @param channel channel of a client logged in
+     * @return true if all the requests succeeded
+     * @throws IOException if some error occurs while talking to the server
+     */
+    private static boolean createAndDelete(SocketChannel channel) throws IOException {
+        send(channel, "post /Benchmark/A post that is deleted right away");
+        if (readCode(channel) != 0) return false;
+
+        send(channel, "blog 1");
+        if (readCode(channel) != 0) return false;
+        int idPost = JsonParser.parseString(readBody(channel)).getAsJsonObject()
+                .get("posts").getAsJsonArray().get(0).getAsJsonObject().get("idPost").getAsInt();
+
+        send(channel, "delete " + idPost);
+        return readCode(channel) == 0;
+    }
+
+    /**
+     * Sends a text request preceded by its length
+     * @param channel channel of the client
+     * @param request request to send
+     * @throws IOException if some error occurs while writing to the channel
+     */
+    private static void send(SocketChannel channel, String request) throws IOException {
+        byte []bytes = request.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + bytes.length);
+        buffer.putInt(bytes.length).put(bytes).flip();
+
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    /**
+     * Reads exactly some bytes from the channel
+     * @param channel channel of the client
+     * @param length number of bytes to read
+     * @return the buffer with the bytes read, ready to be read
+     * @throws IOException if some error occurs while reading or the server closes the connection
+     */
+    private static ByteBuffer read(SocketChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+            if (channel.read(buffer) == -1) throw new EOFException("Connection closed by the server");
+
+        return buffer.flip();
+    }
+
+    /**
+     * @param channel channel of the client
+     * @return the response code of the request
+     * @throws IOException if some error occurs while reading from the channel
+     */
+    private static int readCode(SocketChannel channel) throws IOException {
+        return read(channel, Integer.BYTES).getInt();
+    }
+
+    /**
+     * @param channel channel of the client
+     * @return the json response of the request
+     * @throws IOException if some error occurs while reading from the channel
+     */
+    private static String readBody(SocketChannel channel) throws IOException {
+        int length = read(channel, Integer.BYTES).getInt();
+        return new String(read(channel, length).array(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * This class implements a standalone benchmark of the decoding of the text requests.
+ * It compares the old decoding, which built a String from the request and split it
+ * into a String[], with TextRequest, which tokenizes the bytes of the request.
+ * For each command it prints the time and the bytes allocated for each request.
+ * Compile and run it from the root of the project:
+ *   javac -d out/bench -cp lib/gson-2.8.9.jar src/*.java bench/*.java
+ *   java -cp out/bench:lib/gson-2.8.9.jar TextRequestBenchmark
+ */
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+public class TextRequestBenchmark {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final int REQUESTS_PER_ROUND = 200_000;
+
+    //The ten commands of the old protocol: name, format of the old client and format of the new client
+    private static final String [][]COMMANDS = {
+            {"login", "login alice password", "login alice password"},
+            {"list users", "list users alice", "list users"},
+            {"post", "post /Title of the post/Content of the post, a bit longer than the title/alice", "post /Title of the post/Content of the post, a bit longer than the title"},
+            {"delete", "delete 1234 alice", "delete 1234"},
+            {"follow", "follow bob alice", "follow bob"},
+            {"rate", "rate 1234 +1 alice", "rate 1234 +1"},
+            {"blog", "blog alice", "blog"},
+            {"show post", "show post 1234 alice", "show post 1234"},
+            {"comment", "comment /1234/A comment under the post/alice", "comment /1234/A comment under the post"},
+            {"wallet", "wallet alice", "wallet"}
+    };
+
+    private static final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static long sink = 0; //Consumes the results, so the decoding isn't optimized away
+
+    public static void main(String []args) {
+        System.out.printf("%-14s %12s %12s %12s %12s%n", "command", "split ns", "split B", "bytes ns", "bytes B");
+
+        for (String []command : COMMANDS) {
+            byte []oldRequest = command[1].getBytes(StandardCharsets.UTF_8);
+            byte []newRequest = command[2].getBytes(StandardCharsets.UTF_8);
+
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                measure(oldRequest, true);
+                measure(newRequest, false);
+            }
+
+            double []split = new double[]{Double.MAX_VALUE, Double.MAX_VALUE};
+            double []bytes = new double[]{Double.MAX_VALUE, Double.MAX_VALUE};
+            //Keeps the best round, the other ones are slowed down by the GC and the JIT
+            for (int i = 0; i < ROUNDS; i++) {
+                double []result = measure(oldRequest, true);
+                if (result[0] < split[0]) split = result;
+                result = measure(newRequest, false);
+                if (result[0] < bytes[0]) bytes = result;
+            }
+
+            System.out.printf("%-14s %12.1f %12.1f %12.1f %12.1f%n", command[0], split[0], split[1], bytes[0], bytes[1]);
+        }
+
+        if (sink == 42) System.out.println();
+    }
+
+    /**
+     * Decodes the same request many times
+     * @param request bytes of the request
+     * @param split true to use the old decoding, false to use TextRequest
+     * @return the nanoseconds and the bytes allocated for each request
+     */
+    private static double[] measure(byte []request, boolean split) {
+        long threadId = Thread.currentThread().getId();
+        long allocated = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < REQUESTS_PER_ROUND; i++)
+            sink += split ? splitDecode(request) : bytesDecode(request);
+
+        long elapsed = System.nanoTime() - start;
+        allocated = threadBean.getThreadAllocatedBytes(threadId) - allocated;
+
+        return new double[]{(double) elapsed / REQUESTS_PER_ROUND, (double) allocated / REQUESTS_PER_ROUND};
+    }
+
+    /**
+     * Decodes a request as the server did before TextRequest:
+     * the request is converted to a String, split by spaces and the command is matched by a switch
+     * @param request bytes of the request
+     * @return a value that depends on the decoded fields
+     */
+    private static int splitDecode(byte []request) {
+        String line = new String(request, StandardCharsets.UTF_8);
+        String []args = line.split(" ");
+
+        return switch (args[0]) {
+            case "login" -> args[1].length() + args[2].length();
+            case "list" -> args[1].equals("users") ? args[2].length() : -1;
+            case "post" -> {
+                String []postArgs = line.split("/");
+                yield postArgs[1].length() + postArgs[2].length() + postArgs[3].length();
+            }
+            case "delete", "rewin" -> Integer.parseInt(args[1]) + args[2].length();
+            case "follow" -> args[1].length() + args[2].length();
+            case "rate" -> Integer.parseInt(args[1]) + Integer.parseInt(args[2]) + args[3].length();
+            case "blog", "wallet" -> args[1].length();
+            case "show" -> args[1].equals("post") ? Integer.parseInt(args[2]) + args[3].length() : args[2].length();
+            case "comment" -> {
+                String []commentArgs = line.split("/");
+                yield Integer.parseInt(commentArgs[1]) + commentArgs[2].length() + commentArgs[3].length();
+            }
+            default -> -1;
+        };
+    }
+
+    /**
+     * Decodes a request with TextRequest, reading the fields as the handlers do
+     * @param request bytes of the request
+     * @return a value that depends on the decoded fields
+     */
+    private static int bytesDecode(byte []request) {
+        TextRequest textRequest = new TextRequest(request);
+        int value = textRequest.getOpcode();
+
+        String fieldTypes = BinaryRequest.getFieldTypes(textRequest.getOpcode());
+        for (int i = 0; i < fieldTypes.length(); i++)
+            value += fieldTypes.charAt(i) == 'i' ? textRequest.getInt(i) : textRequest.getString(i).length();
+
+        return value;
+    }
+}
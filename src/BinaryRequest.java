@@ -0,0 +1,386 @@
+/**
+ * This class implements the binary protocol used to send the requests.
+ * A binary request is made of the request identifier encoded as varint,
+ * an opcode byte and its fields: the numbers are encoded as zigzag varints
+ * and the strings as UTF-8 bytes preceded by their length encoded as varint.
+ * The server answers to the requests in order, sending back their identifier
+ * before the response code, so a client can pipeline more requests.
+ * A BATCH request contains more sub-requests, each one encoded as a binary
+ * request preceded by its length encoded as varint.
+ * The client negotiates the binary protocol sending the text request
+ * NEGOTIATION_REQUEST, the servers that don't support it answer as an unknown command
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class BinaryRequest implements DecodedRequest {
+    //Text request used to switch the connection to the binary protocol
+    public static final String NEGOTIATION_REQUEST = "protocol binary";
+
+    //Opcodes of the requests
+    public static final byte LOGIN = 1;
+    public static final byte LOGOUT = 2;
+    public static final byte LIST_USERS = 3;
+    public static final byte LIST_FOLLOWING = 4;
+    public static final byte POST = 5;
+    public static final byte DELETE = 6;
+    public static final byte FOLLOW = 7;
+    public static final byte UNFOLLOW = 8;
+    public static final byte RATE = 9;
+    public static final byte BLOG = 10;
+    public static final byte SHOW_POST = 11;
+    public static final byte SHOW_FEED = 12;
+    public static final byte REWIN = 13;
+    public static final byte COMMENT = 14;
+    public static final byte WALLET = 15;
+    public static final byte WALLET_BTC = 16;
+    public static final byte GET_FOLLOWERS = 17;
+    public static final byte BATCH = 18;
+    public static final byte SUBSCRIBE = 19;
+    //Highest opcode defined
+    public static final byte LAST_OPCODE = SUBSCRIBE;
+
+    //Types of the fields
+    private static final char INT = 'i';
+    private static final char STRING = 's';
+
+    //Fields of each request indexed by opcode. The requests after the login
+    //don't carry the username, the server gets it from the session of the connection
+    private static final String []FIELDS = {
+            null,  //Unused opcode
+            "ss",  //LOGIN username password
+            "",    //LOGOUT
+            "i",   //LIST_USERS limit
+            "",    //LIST_FOLLOWING
+            "ss",  //POST title content
+            "i",   //DELETE idPost
+            "s",   //FOLLOW userToFollow
+            "s",   //UNFOLLOW userToUnfollow
+            "ii",  //RATE idPost vote
+            "ii",  //BLOG limit beforeId
+            "i",   //SHOW_POST idPost
+            "ii",  //SHOW_FEED limit beforeId
+            "i",   //REWIN idPost
+            "is",  //COMMENT idPost comment
+            "",    //WALLET
+            "",    //WALLET_BTC
+            "",    //GET_FOLLOWERS
+            "",    //BATCH sub-requests, decoded as bytes
+            ""     //SUBSCRIBE
+    };
+
+    private int requestId = -1; //-1 if the identifier can't be decoded
+    private byte opcode = 0;
+    private Object []fields = new Object[0];
+    private boolean malformed = false;
+
+    /**
+     * Decodes a binary request
+     * @param request bytes of the request
+     */
+    public BinaryRequest(byte []request) {
+        try {
+            decode(request);
+        } catch (IllegalArgumentException e) {
+            malformed = true;
+        }
+    }
+
+    /**
+     * Decodes the identifier, the opcode and the fields of a request
+     * @param request bytes of the request
+     * @throws IllegalArgumentException if the request is malformed
+     */
+    private void decode(byte []request) {
+        int []position = {0}; //Position of the next byte to decode
+
+        requestId = readVarInt(request, position);
+        if (position[0] >= request.length) throw new IllegalArgumentException("Missing opcode");
+
+        opcode = request[position[0]++];
+        String fieldTypes = getFieldTypes(opcode);
+        //Unknown opcode, the request can't be decoded
+        if (fieldTypes == null) return;
+
+        if (opcode == BATCH) {
+            decodeSubRequests(request, position);
+            return;
+        }
+
+        Object []fields = new Object[fieldTypes.length()];
+        for (int i = 0; i < fields.length; i++) {
+            if (fieldTypes.charAt(i) == INT) {
+                fields[i] = zigzagDecode(readVarInt(request, position));
+            } else {
+                fields[i] = new String(readBytes(request, position), StandardCharsets.UTF_8);
+            }
+        }
+
+        if (position[0] != request.length) throw new IllegalArgumentException("Too many bytes in the request");
+
+        this.fields = fields;
+    }
+
+    /**
+     * Decodes the sub-requests of a batch request until the end of the request
+     * @param request bytes of the request
+     * @param position position of the first sub-request
+     * @throws IllegalArgumentException if the request is malformed
+     */
+    private void decodeSubRequests(byte []request, int []position) {
+        List<byte[]> subRequests = new ArrayList<>();
+        while (position[0] < request.length)
+            subRequests.add(readBytes(request, position));
+
+        fields = subRequests.toArray();
+    }
+
+    /**
+     * Reads a sequence of bytes preceded by its length encoded as varint
+     * @param bytes bytes to read
+     * @param position position of the length, updated after the read
+     * @return the bytes read
+     * @throws IllegalArgumentException if the length is not valid
+     */
+    private static byte[] readBytes(byte []bytes, int []position) {
+        int length = readVarInt(bytes, position);
+        if (length < 0 || length > bytes.length - position[0])
+            throw new IllegalArgumentException("Invalid length: " + length);
+
+        byte []read = Arrays.copyOfRange(bytes, position[0], position[0] + length);
+        position[0] += length;
+
+        return read;
+    }
+
+    /**
+     * Decodes only the identifier of a request
+     * @param request bytes of the request
+     * @return the identifier of the request, -1 if it can't be decoded
+     */
+    public static int readRequestId(byte []request) {
+        try {
+            return readVarInt(request, new int[]{0});
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Decodes only the opcode of a request
+     * @param request bytes of the request
+     * @return the opcode of the request, 0 if it can't be decoded
+     */
+    public static byte readOpcode(byte []request) {
+        try {
+            int []position = {0};
+            readVarInt(request, position); //Skips the identifier
+            return position[0] < request.length ? request[position[0]] : 0;
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the identifier of the request, -1 if it can't be decoded
+     */
+    public int getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * @return true if the request can't be decoded
+     */
+    public boolean isMalformed() {
+        return malformed;
+    }
+
+    /**
+     * @return the opcode of the request
+     */
+    public byte getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * @return true if the opcode of the request is known
+     */
+    public boolean isKnown() {
+        return getFieldTypes(opcode) != null;
+    }
+
+    /**
+     * @param index index of the field
+     * @return the field as number
+     */
+    public int getInt(int index) {
+        return (Integer) fields[index];
+    }
+
+    /**
+     * @param index index of the field
+     * @return the field as string
+     */
+    public String getString(int index) {
+        return (String) fields[index];
+    }
+
+    /**
+     * @return the number of fields of the request, or of sub-requests for a batch request
+     */
+    public int getFieldCount() {
+        return fields.length;
+    }
+
+    /**
+     * @param index index of the sub-request of a batch request
+     * @return the decoded sub-request
+     */
+    public DecodedRequest getSubRequest(int index) {
+        return new BinaryRequest(getBytes(index));
+    }
+
+    /**
+     * @param index index of the field
+     * @return the field as bytes, used for the sub-requests of a batch request
+     */
+    public byte[] getBytes(int index) {
+        return (byte[]) fields[index];
+    }
+
+    /**
+     * Encodes a binary request
+     * @param requestId identifier of the request
+     * @param opcode opcode of the request
+     * @param fields fields of the request in textual form
+     * @return the bytes of the request
+     * @throws NumberFormatException if a numeric field is not a number
+     * @throws IllegalArgumentException if the opcode or the number of fields is not valid
+     */
+    public static byte[] encode(int requestId, byte opcode, String ...fields) {
+        String fieldTypes = getFieldTypes(opcode);
+        if (fieldTypes == null || fieldTypes.length() != fields.length)
+            throw new IllegalArgumentException("Invalid request for opcode " + opcode);
+
+        ByteArrayOutputStream request = encodeHeader(requestId, opcode);
+
+        for (int i = 0; i < fields.length; i++) {
+            if (fieldTypes.charAt(i) == INT) {
+                writeVarInt(request, zigzagEncode(Integer.parseInt(fields[i])));
+            } else {
+                byte []bytes = fields[i].getBytes(StandardCharsets.UTF_8);
+                writeVarInt(request, bytes.length);
+                request.write(bytes, 0, bytes.length);
+            }
+        }
+
+        return request.toByteArray();
+    }
+
+    /**
+     * Encodes a batch request
+     * @param requestId identifier of the request
+     * @param subRequests sub-requests encoded as binary requests
+     * @return the bytes of the request
+     */
+    public static byte[] encodeBatch(int requestId, List<byte[]> subRequests) {
+        ByteArrayOutputStream request = encodeHeader(requestId, BATCH);
+
+        for (byte []subRequest : subRequests) {
+            writeVarInt(request, subRequest.length);
+            request.write(subRequest, 0, subRequest.length);
+        }
+
+        return request.toByteArray();
+    }
+
+    /**
+     * Encodes a request without fields, that the server answers as malformed
+     * if the opcode requires some fields
+     * @param requestId identifier of the request
+     * @param opcode opcode of the request
+     * @return the bytes of the request
+     */
+    public static byte[] encodeWithoutFields(int requestId, byte opcode) {
+        return encodeHeader(requestId, opcode).toByteArray();
+    }
+
+    /**
+     * Encodes the identifier and the opcode of a request
+     * @param requestId identifier of the request
+     * @param opcode opcode of the request
+     * @return the stream where the fields can be written
+     */
+    private static ByteArrayOutputStream encodeHeader(int requestId, byte opcode) {
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        writeVarInt(request, requestId);
+        request.write(opcode);
+
+        return request;
+    }
+
+    /**
+     * @param opcode opcode of the request
+     * @return the types of the fields of the request, null if the opcode is unknown
+     */
+    static String getFieldTypes(byte opcode) {
+        if (opcode <= 0 || opcode >= FIELDS.length) return null;
+
+        return FIELDS[opcode];
+    }
+
+    /**
+     * Writes a number as varint, 7 bits for each byte starting from the least significant ones
+     * @param out stream where the number is written
+     * @param value number to write
+     */
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Reads a number encoded as varint
+     * @param bytes bytes to read
+     * @param position position of the first byte, updated after the read
+     * @return the number read
+     * @throws IllegalArgumentException if the varint is truncated or too long
+     */
+    private static int readVarInt(byte []bytes, int []position) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (position[0] >= bytes.length) throw new IllegalArgumentException("Truncated request");
+
+            byte b = bytes[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    /**
+     * Maps the signed numbers to unsigned ones, so the small negative numbers are encoded in few bytes
+     * @param value number to map
+     * @return the mapped number
+     */
+    private static int zigzagEncode(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Maps back a number encoded with zigzagEncode
+     * @param value number to map back
+     * @return the original number
+     */
+    private static int zigzagDecode(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
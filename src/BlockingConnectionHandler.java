@@ -0,0 +1,58 @@
+/**
+ * This class implements a task that serves a client with blocking reads and writes.
+ * It's used when the server runs a thread for each connection instead of the reactors
+ */
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class BlockingConnectionHandler implements Runnable {
+    private final SocketChannel client;
+    private final ClientConnection connection;
+
+    private final Map<String, User> users;
+    private final Map<Integer, Post> posts;
+    private final SessionReaper sessionReaper;
+    private final CallbackHandler callbackHandler;
+    private final ExchangeRateProvider exchangeRateProvider;
+    private final FeedCache feedCache;
+    private final AtomicBoolean stateChanged;
+
+    public BlockingConnectionHandler(SocketChannel client, BufferPool bufferPool, Map<String, User> users, Map<Integer, Post> posts, SessionReaper sessionReaper, CallbackHandler callbackHandler, ExchangeRateProvider exchangeRateProvider, FeedCache feedCache, AtomicBoolean stateChanged) {
+        this.client = client;
+        this.users = users;
+        this.posts = posts;
+        this.sessionReaper = sessionReaper;
+        this.callbackHandler = callbackHandler;
+        this.exchangeRateProvider = exchangeRateProvider;
+        this.feedCache = feedCache;
+        this.stateChanged = stateChanged;
+
+        connection = new ClientConnection(bufferPool);
+    }
+
+    public void run() {
+        RequestDecoder requestDecoder = connection.getRequestDecoder();
+
+        try {
+            while (true) {
+                //Reads until a whole request is arrived
+                byte []request;
+                while ((request = requestDecoder.nextRequest()) == null) {
+                    if (requestDecoder.read(client) == -1) return; //Client disconnected
+                }
+
+                //Serves the request with the same handlers of the selector mode
+                new ReaderWorker(client, connection, request, users, posts, sessionReaper, callbackHandler, exchangeRateProvider, feedCache, stateChanged).serve();
+                connection.writeResponse(client);
+            }
+        } catch (IOException e) {
+            System.err.println("Error serving requests: " + e.getMessage());
+        } finally {
+            connection.release();
+            try {client.close();} catch (Exception ignored) {}
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * This class implements a pool of direct buffers divided in size classes.
+ * The buffers are leased to a connection only while a request or a response
+ * is in flight and then returned to the pool
+ */
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BufferPool {
+    //Size of the smallest size class
+    private static final int MIN_BUFFER_SIZE = 512;
+
+    private final int []sizeClasses;
+    private final List<Queue<ByteBuffer>> freeBuffers;
+    private final List<AtomicInteger> pooledBuffers;
+    private final int maxPooledBuffers;
+
+    /**
+     * Creates a pool whose size classes double from MIN_BUFFER_SIZE up to maxBufferSize
+     * @param maxBufferSize size of the biggest buffer
+     * @param maxPooledBuffers maximum number of free buffers kept for each size class
+     */
+    public BufferPool(int maxBufferSize, int maxPooledBuffers) {
+        this.maxPooledBuffers = maxPooledBuffers;
+
+        //Calculates the size classes
+        List<Integer> sizes = new ArrayList<>();
+        int size = Math.min(MIN_BUFFER_SIZE, maxBufferSize);
+        while (size < maxBufferSize) {
+            sizes.add(size);
+            size *= 2;
+        }
+        sizes.add(maxBufferSize);
+
+        sizeClasses = new int[sizes.size()];
+        freeBuffers = new ArrayList<>(sizes.size());
+        pooledBuffers = new ArrayList<>(sizes.size());
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = sizes.get(i);
+            freeBuffers.add(new ConcurrentLinkedQueue<>());
+            pooledBuffers.add(new AtomicInteger(0));
+        }
+    }
+
+    /**
+     * @return the size of the biggest buffer
+     */
+    public int getMaxBufferSize() {
+        return sizeClasses[sizeClasses.length - 1];
+    }
+
+    /**
+     * Leases a buffer of at least the requested size. If the size is bigger
+     * than the biggest size class, a buffer of the biggest size class is leased
+     * @param size minimum size of the buffer
+     * @return a cleared direct buffer
+     */
+    public ByteBuffer lease(int size) {
+        //Finds the smallest size class that fits the size
+        int sizeClass = 0;
+        while (sizeClass < sizeClasses.length - 1 && sizeClasses[sizeClass] < size) sizeClass++;
+
+        ByteBuffer byteBuffer = freeBuffers.get(sizeClass).poll();
+        if (byteBuffer == null) //There are no free buffers
+            return ByteBuffer.allocateDirect(sizeClasses[sizeClass]);
+
+        pooledBuffers.get(sizeClass).decrementAndGet();
+        byteBuffer.clear();
+        return byteBuffer;
+    }
+
+    /**
+     * Returns a buffer to the pool
+     * @param byteBuffer buffer previously leased
+     */
+    public void release(ByteBuffer byteBuffer) {
+        if (byteBuffer == null || !byteBuffer.isDirect()) return;
+
+        for (int i = 0; i < sizeClasses.length; i++) {
+            if (sizeClasses[i] == byteBuffer.capacity()) {
+                //Keeps the buffer only if the size class isn't full
+                if (pooledBuffers.get(i).incrementAndGet() > maxPooledBuffers) {
+                    pooledBuffers.get(i).decrementAndGet();
+                    return;
+                }
+
+                byteBuffer.clear();
+                freeBuffers.get(i).add(byteBuffer);
+                return;
+            }
+        }
+    }
+}
@@ -6,12 +6,15 @@
 import java.rmi.RemoteException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 public class CallbackHandler implements CallbackHandlerInterface {
     private final Map<String, NotifyNewFollower> registeredClient;
+    private final NotificationDispatcher notificationDispatcher;
 
-    public CallbackHandler() {
+    public CallbackHandler(Map<String, Session> loggedUsers, Executor notificationThreads, long notificationTimeout) {
         registeredClient = new ConcurrentHashMap<>();
+        notificationDispatcher = new NotificationDispatcher(registeredClient, loggedUsers, notificationThreads, notificationTimeout);
     }
 
     /**
@@ -36,28 +39,20 @@ public class CallbackHandler implements CallbackHandlerInterface {
     }
 
     /**
-     * Notifies the user that he has a new follower
+     * Notifies the user that he has a new follower. The notification is delivered asynchronously
      * @param user the username of the user to notify
      * @param newFollower the username of the new follower
      */
-    public synchronized void notifyNewFollower(String user, String newFollower) throws RemoteException {
-        NotifyNewFollower userToNotify = registeredClient.get(user);
-
-        //Checks if the client is still connected
-        if (userToNotify != null)
-            userToNotify.addNewFollower(newFollower);
+    public void notifyNewFollower(String user, String newFollower) {
+        notificationDispatcher.enqueue(user, newFollower, true);
     }
 
     /**
-     * Notifies the user that he has lost a follower
+     * Notifies the user that he has lost a follower. The notification is delivered asynchronously
      * @param user the username of the user to notify
      * @param exFollower the username of the lost follower
      */
-    public synchronized void notifyLostFollower(String user, String exFollower) throws RemoteException {
-        NotifyNewFollower userToNotify = registeredClient.get(user);
-
-        //Checks if the client is still connected
-        if (userToNotify != null)
-            userToNotify.removeFollower(exFollower);
+    public void notifyLostFollower(String user, String exFollower) {
+        notificationDispatcher.enqueue(user, exFollower, false);
     }
 }
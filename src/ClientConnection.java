@@ -0,0 +1,381 @@
+/**
+ * This class implements the state of a client connection.
+ * It's attached to the SelectionKey of the client.
+ * Besides the responses, the server can push on the connection the
+ * notifications of the followers. The responses and the notifications are
+ * queued as frames and written by a single thread, the reactor of the connection,
+ * so the frames are never interleaved and a client that doesn't read never
+ * holds a thread: the unwritten bytes wait on the connection until it's writable
+ */
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ClientConnection {
+    //Sent instead of the request identifier or the response code at the start of a pushed frame
+    public static final int PUSH_FRAME = Integer.MIN_VALUE;
+
+    private final RequestDecoder requestDecoder;
+    private final BufferPool bufferPool;
+
+    //True if the client negotiated the binary protocol
+    private boolean binaryProtocol = false;
+
+    //Session of the user logged in on this connection, null if no user is logged in
+    private Session session = null;
+
+    //Response waiting to be sent to the client
+    private Integer requestId = null;
+    private int responseCode = 0;
+    private ResponseWriter responseBody = null;
+
+    //Frames waiting to be written, added by any thread and written only by the reactor
+    private final Queue<Frame> frames = new ConcurrentLinkedQueue<>();
+    private Frame currentFrame = null; //Frame written partially
+    private final AtomicInteger pendingFrames = new AtomicInteger(0); //Frames queued and not written completely
+    private volatile long lastProgress; //Last time the client accepted some bytes while frames were pending
+
+    //Reactor of the connection, null if the connection isn't registered on a selector
+    private SelectionKey key = null;
+    private Queue<Registrable> readyToBeRegistered = null;
+
+    private boolean serving = false; //True while a worker serves a request, used only by the reactor
+    private volatile boolean closed = false; //True when the buffers of the connection were released
+
+    //Frame sent to the client: a header followed by an optional json body
+    private static class Frame {
+        private final ByteBuffer header;
+        private final ResponseWriter body;
+        private final ByteBuffer []buffers; //Header and body, ready to be written
+
+        private Frame(ByteBuffer header, ResponseWriter body) {
+            this.header = header;
+            this.body = body;
+
+            header.flip();
+            if (body == null) {
+                buffers = new ByteBuffer[]{header};
+            } else {
+                ByteBuffer []bodyBuffers = body.getBuffers();
+                buffers = new ByteBuffer[bodyBuffers.length + 1];
+                buffers[0] = header;
+                System.arraycopy(bodyBuffers, 0, buffers, 1, bodyBuffers.length);
+            }
+        }
+
+        /**
+         * @return true if all the bytes of the frame were written
+         */
+        private boolean isWritten() {
+            return !buffers[buffers.length - 1].hasRemaining();
+        }
+
+        /**
+         * Returns the buffers of the frame to the pool
+         * @param bufferPool pool of the buffers
+         */
+        private void release(BufferPool bufferPool) {
+            bufferPool.release(header);
+            if (body != null) body.release();
+        }
+    }
+
+    public ClientConnection(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+        requestDecoder = new RequestDecoder(bufferPool);
+    }
+
+    /**
+     * Binds the connection to the reactor that registered it, so the other
+     * threads can ask the reactor to write the frames they queue
+     * @param key key of the connection
+     * @param readyToBeRegistered queue of the channels to be served again by the reactor
+     */
+    public void bind(SelectionKey key, Queue<Registrable> readyToBeRegistered) {
+        this.key = key;
+        this.readyToBeRegistered = readyToBeRegistered;
+    }
+
+    /**
+     * @return true while a worker serves a request of the connection. It must be used only by the reactor
+     */
+    public boolean isServing() {
+        return serving;
+    }
+
+    /**
+     * Marks the connection as served by a worker or not. It must be used only by the reactor
+     * @param serving true when a request is handed to a worker, false when its response is ready
+     */
+    public void setServing(boolean serving) {
+        this.serving = serving;
+    }
+
+    /**
+     * @return the decoder of the requests sent by the client
+     */
+    public RequestDecoder getRequestDecoder() {
+        return requestDecoder;
+    }
+
+    /**
+     * @return true if the client negotiated the binary protocol
+     */
+    public boolean isBinaryProtocol() {
+        return binaryProtocol;
+    }
+
+    /**
+     * Switches the connection to the binary protocol
+     */
+    public void setBinaryProtocol() {
+        binaryProtocol = true;
+    }
+
+    /**
+     * @return the session of the user logged in on this connection, null if no user is logged in
+     */
+    public Session getSession() {
+        return session;
+    }
+
+    /**
+     * Binds a session to this connection
+     * @param session session of the user logged in, null when the user logs out
+     */
+    public void setSession(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * @return pool of the buffers used to send the responses
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Sets the response to send to the client
+     * @param requestId identifier of the request, null if the request was sent with the text protocol
+     * @param responseCode response code
+     * @param responseBody json response encoded in pooled buffers, null if there is only the response code
+     */
+    public void setResponse(Integer requestId, int responseCode, ResponseWriter responseBody) {
+        this.requestId = requestId;
+        this.responseCode = responseCode;
+        this.responseBody = responseBody;
+    }
+
+    /**
+     * @return the identifier of the request, null if the request was sent with the text protocol
+     */
+    public Integer getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * @return the response code to send to the client
+     */
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    /**
+     * @return the json response encoded in pooled buffers, null if there is only the response code
+     */
+    public ResponseWriter getResponseBody() {
+        return responseBody;
+    }
+
+    /**
+     * Queues the response as a frame to be written and then discards it
+     */
+    public void queueResponse() {
+        //Leases a buffer for the header of the response
+        ByteBuffer header = bufferPool.lease(3 * Integer.BYTES);
+
+        //Writes the identifier of the request to the header, so the client can match the pipelined responses
+        if (requestId != null) header.putInt(requestId);
+        //Writes the response code to the header
+        header.putInt(responseCode);
+        //Writes the json response length to the header, if there is a json response
+        if (responseBody != null) header.putInt(responseBody.length());
+
+        //The header and the buffers of the json response are sent with a gathering write
+        addFrame(new Frame(header, responseBody));
+
+        //The buffers of the json response now belong to the frame
+        responseBody = null;
+        clearResponse();
+    }
+
+    /**
+     * Sends the response to a client served with blocking writes and then discards it
+     * @param client channel of the client, in blocking mode
+     * @throws IOException if some error occurs while writing to the channel
+     */
+    public void writeResponse(SocketChannel client) throws IOException {
+        queueResponse();
+        flush(client);
+    }
+
+    /**
+     * Queues the push of the notification of a new or a lost follower, without writing it.
+     * The frame is made of PUSH_FRAME followed by the length of the json notification and the notification.
+     * The reactor of the connection writes the frame as soon as the channel is writable
+     * @param follower username of the follower
+     * @param followed true if it's a new follower, false if it's a lost follower
+     * @param timeout maximum time the client can leave the frames queued without reading any byte
+     * @throws IOException if the connection was closed or can't receive pushes, the client doesn't read or an error occurs while encoding the notification
+     */
+    public void queuePush(String follower, boolean followed, long timeout) throws IOException {
+        if (closed) throw new IOException("Connection closed");
+        if (!canPush()) throw new IOException("The connection isn't served by a reactor");
+        //The frames wait only for the client to read
+        if (pendingFrames.get() > 0 && System.currentTimeMillis() - lastProgress > timeout)
+            throw new IOException("Timeout while pushing to the client");
+
+        //Encodes the notification in pooled buffers
+        ResponseWriter body = new ResponseWriter(bufferPool);
+        ByteBuffer header = bufferPool.lease(2 * Integer.BYTES);
+
+        try {
+            JsonWriter writer = new JsonWriter(body);
+            writer.beginObject();
+            writer.name("follower").value(follower);
+            writer.name("followed").value(followed);
+            writer.endObject();
+        } catch (IOException e) {
+            bufferPool.release(header);
+            body.release();
+            throw e;
+        }
+
+        header.putInt(PUSH_FRAME);
+        header.putInt(body.length());
+        addFrame(new Frame(header, body));
+
+        //The connection was released meanwhile, so nobody would write the frame
+        if (closed) discardFrames();
+
+        //Asks the reactor to write the frame
+        notifyReactor(Registrable.FLUSH);
+    }
+
+    /**
+     * Queues a frame to be written
+     * @param frame frame to queue
+     */
+    private void addFrame(Frame frame) {
+        //The client is waited from now if no frame was pending
+        if (pendingFrames.getAndIncrement() == 0) lastProgress = System.currentTimeMillis();
+        frames.add(frame);
+    }
+
+    /**
+     * The notifications can be pushed only on the connections served by a reactor, which writes
+     * them as soon as the channel is writable. A thread blocked reading a request can't write them
+     * @return true if the notifications can be pushed on the connection
+     */
+    public boolean canPush() {
+        return key != null;
+    }
+
+    /**
+     * Asks the reactor of the connection to close it, so only the reactor cancels its key
+     * and the buffers are released when no worker is using the connection
+     * @return false if the connection isn't served by a reactor, so the caller must close the channel
+     */
+    public boolean requestClose() {
+        return notifyReactor(Registrable.CLOSE);
+    }
+
+    /**
+     * Hands an event to the reactor of the connection
+     * @param event event for the reactor
+     * @return false if the connection isn't served by a reactor
+     */
+    private boolean notifyReactor(int event) {
+        if (key == null) return false;
+
+        readyToBeRegistered.add(new Registrable(key, event));
+        //Wakes up the selector to handle the event
+        key.selector().wakeup();
+        return true;
+    }
+
+    /**
+     * Writes the frames queued until the channel can't accept more bytes.
+     * With a reactor it must be called only by the reactor
+     * @param client channel of the client
+     * @return true if all the frames were written, false if some bytes wait for the channel to be writable
+     * @throws IOException if some error occurs while writing to the channel
+     */
+    public boolean flush(SocketChannel client) throws IOException {
+        while (true) {
+            if (currentFrame == null) {
+                currentFrame = frames.poll();
+                if (currentFrame == null) return true; //Nothing left to write
+            }
+
+            //Sends the header and the body of the frame with a gathering write
+            while (!currentFrame.isWritten()) {
+                //The send buffer of the socket is full, the rest is written when the channel is writable
+                if (client.write(currentFrame.buffers) == 0) return false;
+                lastProgress = System.currentTimeMillis();
+            }
+
+            //The frame was sent
+            currentFrame.release(bufferPool);
+            currentFrame = null;
+            pendingFrames.decrementAndGet();
+        }
+    }
+
+    /**
+     * Discards the response already sent to the client
+     */
+    public void clearResponse() {
+        //Returns the buffers of the json response to the pool
+        if (responseBody != null) responseBody.release();
+
+        requestId = null;
+        responseCode = 0;
+        responseBody = null;
+    }
+
+    /**
+     * Returns the buffers of the connection to the pool and logs out
+     * the user logged in, because the connection is being closed
+     */
+    public void release() {
+        if (closed) return; //Already released
+        closed = true;
+        requestDecoder.release();
+        clearResponse();
+
+        //Discards the frames not written
+        if (currentFrame != null) currentFrame.release(bufferPool);
+        currentFrame = null;
+        discardFrames();
+
+        if (session != null) session.close();
+        session = null;
+    }
+
+    /**
+     * Returns to the pool the buffers of the frames queued
+     */
+    private void discardFrames() {
+        Frame frame;
+        while ((frame = frames.poll()) != null)
+            frame.release(bufferPool);
+    }
+}
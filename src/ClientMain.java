@@ -1,6 +1,8 @@
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
@@ -21,6 +23,9 @@ public class ClientMain {
 
     private static int bufferSize = 16 * 1024;
 
+    private static boolean binaryProtocol = true;
+    private static boolean pushNotifications = true;
+
     public static void main(String []args) {
         //Checks if is specified a different configuration file
         if (args.length == 1) configurationFile = args[0];
@@ -35,7 +40,7 @@ public class ClientMain {
         //Initializes the Winsome API
         Winsome winsome = null;
         try {
-            winsome = new Winsome(serverIP, tcpPort, registryHost, registryPort, registerServiceName, callbackServiceName, bufferSize);
+            winsome = new Winsome(serverIP, tcpPort, registryHost, registryPort, registerServiceName, callbackServiceName, bufferSize, binaryProtocol, pushNotifications);
         } catch (RemoteException e) {
             System.err.println("< Error while getting the registry: (" + e.getMessage() + ")");
             System.exit(1);
@@ -87,13 +92,18 @@ public class ClientMain {
                 }
 
                 case "list" -> {
-                    if (arguments.length != 2 || (!arguments[1].equals("users") && !arguments[1].equals("following") && !arguments[1].equals("followers"))) {
+                    if (arguments.length < 2 || (!arguments[1].equals("users") && !arguments[1].equals("following") && !arguments[1].equals("followers"))) {
                         System.out.println("< Invalid command '" + command + "'. Use 'list users', 'list followers' or 'list following'");
                         break;
                     }
 
+                    if (arguments.length > (arguments[1].equals("users") ? 3 : 2)) {
+                        System.out.println("< Usage: list " + arguments[1] + (arguments[1].equals("users") ? " [limit]" : ""));
+                        break;
+                    }
+
                     if (arguments[1].equals("users")) { //list users
-                        winsome.listUsers();
+                        winsome.listUsers(arguments.length > 2 ? arguments[2] : null);
                     } else if (arguments[1].equals("followers")) { //list followers
                         winsome.listFollowers();
                     } else { //list following
@@ -120,12 +130,12 @@ public class ClientMain {
                 }
 
                 case "blog" -> {
-                    if (arguments.length != 1) {
-                        System.out.println("< Usage: blog");
+                    if (arguments.length > 3) {
+                        System.out.println("< Usage: blog [limit] [beforeId]");
                         break;
                     }
 
-                    winsome.viewBlog();
+                    winsome.viewBlog(arguments.length > 1 ? arguments[1] : null, arguments.length > 2 ? arguments[2] : null);
                 }
 
                 case "post" -> {
@@ -157,7 +167,12 @@ public class ClientMain {
                     }
 
                     if (arguments[1].equals("feed")) { //show feed
-                        winsome.showFeed();
+                        if (arguments.length > 4) {
+                            System.out.println("< Usage: show feed [limit] [beforeId]");
+                            break;
+                        }
+
+                        winsome.showFeed(arguments.length > 2 ? arguments[2] : null, arguments.length > 3 ? arguments[3] : null);
                     } else { //show post
                         if (arguments.length != 3) {
                             System.out.println("< Usage: show post <idPost>");
@@ -187,12 +202,14 @@ public class ClientMain {
                 }
 
                 case "rate" -> {
-                    if (arguments.length != 3) {
-                        System.out.println("< Usage: rate <idPost> <vote>");
+                    if (arguments.length < 3) {
+                        System.out.println("< Usage: rate <idPost> [<idPost> ...] <vote>");
                         break;
                     }
 
-                    winsome.ratePost(arguments[1], arguments[2]);
+                    //The posts are rated with pipelined requests
+                    List<String> idPosts = Arrays.asList(arguments).subList(1, arguments.length - 1);
+                    winsome.ratePost(idPosts, arguments[arguments.length - 1]);
                 }
 
                 case "comment" -> {
@@ -223,6 +240,25 @@ public class ClientMain {
                     }
                 }
 
+                case "batch" -> {
+                    if (arguments.length != 2) {
+                        System.out.println("< Usage: batch <file>");
+                        break;
+                    }
+
+                    //Reads the commands from the file, one for each line
+                    List<String> commands;
+                    try {
+                        commands = Files.readAllLines(Path.of(arguments[1]));
+                    } catch (IOException e) {
+                        System.out.println("< Error while reading " + arguments[1] + ": " + e.getMessage());
+                        break;
+                    }
+                    commands.removeIf(String::isBlank);
+
+                    winsome.batch(commands);
+                }
+
                 case "exit" -> {
                     //Sets the termination flag to true
                     termination = true;
@@ -240,20 +276,21 @@ public class ClientMain {
                     System.out.println("< register <username> <password> <tags> - to register a new user (max 5 tags)");
                     System.out.println("< login <username> <password> - to login in Winsome");
                     System.out.println("< logout - to logout from winsome");
-                    System.out.println("< list users - to list all the users who have at least one tag in common");
+                    System.out.println("< list users [limit] - to list the users who have at least one tag in common, the ones with more tags in common first");
                     System.out.println("< list followers - to list all the users who are following the logged user");
                     System.out.println("< list following - to list all the users who are followed by the logged user");
                     System.out.println("< follow <username> - to follow a user");
                     System.out.println("< unfollow <username> - to unfollow a user");
-                    System.out.println("< blog - to show all the titles of the posts created by the logged user");
+                    System.out.println("< blog [limit] [beforeId] - to show the titles of the posts created by the logged user, a page at a time from the newest");
                     System.out.println("< post <title> <content> - to add a new post in Winsome");
-                    System.out.println("< show feed - to show all the titles of the posts created by users who are followed by the logged user");
+                    System.out.println("< show feed [limit] [beforeId] - to show the titles of the posts of the users followed by the logged user, a page at a time from the newest");
                     System.out.println("< show post <idPost> - to show the a post");
                     System.out.println("< delete <idPost> - to delete a post from Winsome");
-                    System.out.println("< rate <idPost> <vote> - to rate a post (vote must be +1 or -1)");
+                    System.out.println("< rate <idPost> [<idPost> ...] <vote> - to rate one or more posts (vote must be +1 or -1)");
                     System.out.println("< comment <idPost> <comment> - to add a comment to a post");
                     System.out.println("< wallet - to get the wallet of the current user");
                     System.out.println("< wallet btc - to get the wallet in BitCoin of the current user");
+                    System.out.println("< batch <file> - to execute the post, delete, follow, unfollow, rate, rewin and comment commands in the file with a single request");
                     System.out.println("< exit - to close the client");
                 }
 
@@ -300,6 +337,28 @@ public class ClientMain {
 
                     case "RMI-CALLBACK" -> callbackServiceName = line.split("=")[1];
 
+                    case "PROTOCOL" -> {
+                        String protocol = line.split("=")[1];
+
+                        if (!protocol.equals("binary") && !protocol.equals("text")) {
+                            System.err.println("PROTOCOL must be 'binary' or 'text'");
+                            System.exit(1);
+                        }
+
+                        binaryProtocol = protocol.equals("binary");
+                    }
+
+                    case "FOLLOWER-NOTIFICATIONS" -> {
+                        String notifications = line.split("=")[1];
+
+                        if (!notifications.equals("tcp") && !notifications.equals("rmi")) {
+                            System.err.println("FOLLOWER-NOTIFICATIONS must be 'tcp' or 'rmi'");
+                            System.exit(1);
+                        }
+
+                        pushNotifications = notifications.equals("tcp");
+                    }
+
                     default -> {
                         //Checks if the line is not empty and doesn't start with '#'
                         if (!line.equals("") && !line.startsWith("#")) {
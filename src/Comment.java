@@ -2,21 +2,34 @@
  * This class implements a comment
  */
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 
 public class Comment {
     private static int nextId = 0;
     private final int idComment;
-    private final String author;
+    private final int author; //Id of the author
     private final String content;
 
-    public Comment(String author, String content) {
+    public Comment(int author, String content) {
         idComment = nextId++;
         this.author = author;
         this.content = content;
     }
 
+    /**
+     * Creates a comment. This constructor should be used only while deserializing
+     * @param idComment comment id
+     * @param author id of the author
+     * @param content content of the comment
+     */
+    public Comment(int idComment, int author, String content) {
+        this.idComment = idComment;
+        this.author = author;
+        this.content = content;
+    }
+
     /**
      * Returns the comment id
      * @return comment id
@@ -26,10 +39,10 @@ public class Comment {
     }
 
     /**
-     * Returns the author
+     * Returns the id of the author
      * @return author
      */
-    public String getAuthor() {
+    public int getAuthor() {
         return author;
     }
 
@@ -43,11 +56,14 @@ public class Comment {
     }
 
     /**
-     * Returns the comment in the json format
-     * @return a string that contains the comment in json format
+     * Writes the comment in json format
+     * @param writer writer used to write the comment as json object
      */
-    public String toJson() {
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        return gson.toJson(this);
+    public void toJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("idComment").value(idComment);
+        writer.name("author").value(UserRegistry.getUsername(author));
+        writer.name("content").value(content);
+        writer.endObject();
     }
 }
@@ -0,0 +1,46 @@
+/**
+ * This interface defines a request decoded from one of the protocols.
+ * The fields of each opcode have the same order and the same types
+ * in the text and in the binary protocol, so the server serves them
+ * with the same handlers
+ */
+
+public interface DecodedRequest {
+    /**
+     * @return true if the request can't be decoded
+     */
+    boolean isMalformed();
+
+    /**
+     * @return the opcode of the request
+     */
+    byte getOpcode();
+
+    /**
+     * @return true if the opcode of the request is known
+     */
+    boolean isKnown();
+
+    /**
+     * @param index index of the field
+     * @return the field as number
+     */
+    int getInt(int index);
+
+    /**
+     * @param index index of the field
+     * @return the field as string
+     */
+    String getString(int index);
+
+    /**
+     * @return the number of fields of the request, or of sub-requests for a batch request
+     */
+    int getFieldCount();
+
+    /**
+     * @param index index of the sub-request of a batch request
+     * @return the decoded sub-request
+     */
+    DecodedRequest getSubRequest(int index);
+}
@@ -0,0 +1,60 @@
+/**
+ * This class implements a task that periodically refreshes the conversion rate
+ * from wincoin to BitCoin and keeps the last one fetched.
+ * The requests only read the cached rate, so a slow or unreachable source
+ * never blocks them. A rate older than its time to live isn't used anymore
+ */
+
+import java.io.IOException;
+
+public class ExchangeRateProvider implements Runnable {
+    private final ExchangeRateSource source;
+    private final int refreshTime; //Time between the refreshes of the rate
+    private final int rateTTL; //Time after which a rate not refreshed expires
+
+    private volatile double rate = -1;
+    private volatile long rateTime = 0; //Time when the rate was fetched
+
+    public ExchangeRateProvider(ExchangeRateSource source, int refreshTime, int rateTTL) {
+        this.source = source;
+        this.refreshTime = refreshTime;
+        this.rateTTL = rateTTL;
+    }
+
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                refresh();
+
+                //Waits until next refresh
+                Thread.sleep(refreshTime);
+            }
+        } catch (InterruptedException ignored) {}
+    }
+
+    /**
+     * Fetches the rate from the source, the previous rate is kept if the fetch fails
+     */
+    private void refresh() {
+        try {
+            double newRate = source.fetchRate();
+            if (newRate < 0) throw new IOException("Negative rate: " + newRate);
+
+            rate = newRate;
+            rateTime = System.currentTimeMillis();
+        } catch (IOException e) {
+            System.err.println("Error while refreshing the conversion rate: (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * @return the last conversion rate fetched, -1 if it's not available or expired
+     */
+    public double getRate() {
+        //The rate is written before its time, so the rate read is at least as recent as the time
+        long fetchedAt = rateTime;
+        if (fetchedAt == 0 || System.currentTimeMillis() - fetchedAt > rateTTL) return -1;
+
+        return rate;
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * This interface defines a source of the conversion rate from wincoin to BitCoin
+ */
+
+import java.io.IOException;
+
+public interface ExchangeRateSource {
+    /**
+     * Fetches the current conversion rate. It can block, so it's called only
+     * by the thread that refreshes the rate
+     * @return the conversion rate from wincoin to BitCoin
+     * @throws IOException if the rate can't be fetched
+     */
+    double fetchRate() throws IOException;
+}
@@ -0,0 +1,327 @@
+/**
+ * This class implements the cache of the feeds of the users.
+ * Each user has a home timeline where the posts of the users followed are added
+ * when they are created or rewinned (fan-out on write), so showing the feed
+ * only reads the timeline. The timelines and the blogs are sorted by post id,
+ * so the feed is read a page at a time, from the newest post. The users with more followers than a threshold
+ * aren't fanned out: their posts are merged in the feed when it's read.
+ * The timelines are bounded, the older posts are merged from the blogs of the users followed.
+ * The timelines aren't persisted, they are rebuilt from the blogs at startup
+ */
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class FeedCache {
+    private final Map<String, User> users;
+    private final Map<Integer, Post> posts;
+    private final int timelineSize; //Maximum number of entries of each timeline
+    private final int celebrityThreshold; //Number of followers over which a user isn't fanned out
+
+    private final Map<Integer, Timeline> timelines; //Timeline of each user id
+    private final IntHashSet celebrities; //Ids of the users with more followers than the threshold
+
+    //Page of a feed
+    public static class Page {
+        private final long []entries; //Entries of the page, from the newest
+        private final int cursor; //Id of the post from which the next page starts, -1 if it's the last page
+
+        private Page(long []entries, int cursor) {
+            this.entries = entries;
+            this.cursor = cursor;
+        }
+
+        /**
+         * @return the entries of the page, from the newest
+         */
+        public long[] getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return the id of the post to use as beforeId to read the next page, -1 if it's the last page
+         */
+        public int getCursor() {
+            return cursor;
+        }
+    }
+
+    //Entries of a source of the feed, sorted from the newest
+    private static class Source {
+        private final PrimitiveIterator.OfLong iterator;
+        private final boolean fromTimeline; //True if the entries must be validated
+        private long next; //Next entry of the source
+
+        private Source(PrimitiveIterator.OfLong iterator, boolean fromTimeline) {
+            this.iterator = iterator;
+            this.fromTimeline = fromTimeline;
+        }
+    }
+
+    public FeedCache(Map<String, User> users, Map<Integer, Post> posts, int timelineSize, int celebrityThreshold) {
+        this.users = users;
+        this.posts = posts;
+        this.timelineSize = timelineSize;
+        this.celebrityThreshold = celebrityThreshold;
+
+        timelines = new ConcurrentHashMap<>();
+        celebrities = new IntHashSet();
+    }
+
+    /**
+     * Builds the timelines of all the users from the blogs of the users they follow.
+     * It should be used only at startup, after the state is recovered
+     */
+    public void rebuild() {
+        for (User user : users.values())
+            if (user.getFollowerCount() > celebrityThreshold) celebrities.add(user.getId());
+
+        for (User user : users.values()) {
+            for (int followedId : user.getFollowed()) {
+                User followed = getUser(followedId);
+                if (followed != null && !celebrities.contains(followedId)) backfill(user.getId(), followed);
+            }
+        }
+    }
+
+    /**
+     * Adds a post created or rewinned by a user to the timelines of its followers
+     * @param user user who created or rewinned the post
+     * @param idPost id of the post
+     */
+    public void postAdded(User user, int idPost) {
+        //The posts of the celebrities are merged when the feed is read
+        if (celebrities.contains(user.getId())) return;
+
+        long entry = Timeline.entry(idPost, user.getId());
+        for (int follower : user.getFollowers())
+            getTimeline(follower).add(entry);
+    }
+
+    /**
+     * Removes a post deleted by its author, or by a rewinner, from the timelines of the followers
+     * @param user author or rewinner of the post
+     * @param idPost id of the post
+     */
+    public void postRemoved(User user, int idPost) {
+        long entry = Timeline.entry(idPost, user.getId());
+        for (int follower : user.getFollowers()) {
+            Timeline timeline = timelines.get(follower);
+            if (timeline != null) timeline.removeIf(e -> e == entry);
+        }
+    }
+
+    /**
+     * Adds the posts of a user to the timeline of a new follower
+     * @param follower new follower
+     * @param followed user followed
+     */
+    public void followed(User follower, User followed) {
+        if (followed.getFollowerCount() > celebrityThreshold) {
+            //The user became a celebrity, so its entries are removed from the timelines to free their slots
+            int celebrity = followed.getId();
+            if (celebrities.add(celebrity)) {
+                for (int followerId : followed.getFollowers()) {
+                    Timeline timeline = timelines.get(followerId);
+                    if (timeline != null) timeline.removeIf(e -> Timeline.getVia(e) == celebrity);
+                }
+            }
+            return;
+        }
+
+        backfill(follower.getId(), followed);
+    }
+
+    /**
+     * Removes the posts of a user from the timeline of an ex follower
+     * @param follower ex follower
+     * @param unfollowed user unfollowed
+     */
+    public void unfollowed(User follower, User unfollowed) {
+        Timeline timeline = timelines.get(follower.getId());
+        if (timeline != null) timeline.removeIf(e -> Timeline.getVia(e) == unfollowed.getId());
+
+        if (unfollowed.getFollowerCount() <= celebrityThreshold && celebrities.remove(unfollowed.getId())) {
+            //The user isn't a celebrity anymore, so its posts are added to the timelines of its followers
+            for (int followerId : unfollowed.getFollowers())
+                backfill(followerId, unfollowed);
+        }
+    }
+
+    /**
+     * Returns a page of the feed of a user: the entries of its timeline still valid
+     * merged with the posts of the celebrities it follows, from the newest.
+     * The timeline is bounded, so the posts not newer than its floor are read
+     * from the blogs of all the users followed, once the merge gets there.
+     * The sources are sorted by post id, so they are merged with a heap
+     * and the merge stops as soon as the page is full
+     * @param user user who is showing the feed
+     * @param limit maximum number of posts of the page
+     * @param beforeId id of the post from which the feed is read, excluded
+     * @return the page of the feed
+     */
+    public Page getFeed(User user, int limit, int beforeId) {
+        //Orders the sources by their next entry, from the newest
+        PriorityQueue<Source> sources = new PriorityQueue<>((s1, s2) -> Long.compare(s2.next, s1.next));
+
+        Timeline timeline = timelines.get(user.getId());
+        int floor = -1;
+        if (timeline != null) {
+            long []timelineEntries = timeline.before(beforeId);
+            //Read after the entries, the floor can only be higher: the entries newer than it are all there
+            floor = timeline.getFloor();
+            int timelineFloor = floor;
+            addSource(sources, Arrays.stream(timelineEntries).filter(e -> Timeline.getIdPost(e) > timelineFloor).iterator(), true);
+        }
+
+        //The posts of the celebrities followed are read from their blogs
+        for (int celebrity : followedCelebrities(user)) {
+            User celebrityUser = getUser(celebrity);
+            if (celebrityUser == null) continue;
+
+            PrimitiveIterator.OfLong blog = celebrityUser.getBlogBefore(beforeId).stream()
+                    .mapToLong(idPost -> Timeline.entry(idPost, celebrity)).iterator();
+            addSource(sources, blog, false);
+        }
+
+        long []entries = new long[Math.min(limit, timelineSize)];
+        int size = 0;
+        boolean blogsMerged = floor < 0; //No entry was dropped from the timeline
+        while (true) {
+            if (!blogsMerged && (sources.isEmpty() || Timeline.getIdPost(sources.peek().next) <= floor)) {
+                //The merge got to the floor of the timeline, the older posts are read from the blogs
+                addBlogs(sources, user, Math.min(beforeId, floor + 1));
+                blogsMerged = true;
+            }
+            if (sources.isEmpty()) break;
+
+            //Takes the newest entry among the sources
+            Source source = sources.poll();
+            long entry = source.next;
+            if (source.iterator.hasNext()) {
+                source.next = source.iterator.nextLong();
+                sources.add(source);
+            }
+
+            if (source.fromTimeline && !isValid(user, entry)) continue;
+
+            //The entries of the same post stay in the same page, since the next page starts before its id
+            if (size >= limit && Timeline.getIdPost(entry) != Timeline.getIdPost(entries[size - 1]))
+                return new Page(Arrays.copyOf(entries, size), Timeline.getIdPost(entries[size - 1]));
+
+            if (size == entries.length) entries = Arrays.copyOf(entries, size * 2 + 1);
+            entries[size++] = entry;
+        }
+
+        //The feed ended, there isn't a next page
+        return new Page(Arrays.copyOf(entries, size), -1);
+    }
+
+    /**
+     * Adds to the heap the blogs of the users followed that aren't celebrities,
+     * since the posts of the celebrities are already read from their blogs
+     * @param sources heap of the sources
+     * @param user user who is showing the feed
+     * @param beforeId id of the post from which the blogs are read, excluded
+     */
+    private void addBlogs(PriorityQueue<Source> sources, User user, int beforeId) {
+        for (int followedId : user.getFollowed()) {
+            User followed = getUser(followedId);
+            if (followed == null || celebrities.contains(followedId)) continue;
+
+            PrimitiveIterator.OfLong blog = followed.getBlogBefore(beforeId).stream()
+                    .mapToLong(idPost -> Timeline.entry(idPost, followedId)).iterator();
+            addSource(sources, blog, false);
+        }
+    }
+
+    /**
+     * Intersects the users followed by a user with the celebrities,
+     * iterating the smaller of the two sets and probing the other one
+     * @param user user who is showing the feed
+     * @return the ids of the celebrities followed by the user
+     */
+    private int[] followedCelebrities(User user) {
+        boolean fromFollowed = user.getFollowedCount() <= celebrities.size();
+        int []candidates = fromFollowed ? user.getFollowed() : celebrities.toArray();
+
+        int count = 0;
+        for (int candidate : candidates) {
+            if (fromFollowed ? celebrities.contains(candidate) : user.follows(candidate))
+                candidates[count++] = candidate;
+        }
+
+        return Arrays.copyOf(candidates, count);
+    }
+
+    /**
+     * Adds a source of the feed to the heap, if it's not empty
+     * @param sources heap of the sources
+     * @param iterator entries of the source, from the newest
+     * @param fromTimeline true if the entries come from the timeline and must be validated
+     */
+    private static void addSource(PriorityQueue<Source> sources, PrimitiveIterator.OfLong iterator, boolean fromTimeline) {
+        if (!iterator.hasNext()) return;
+
+        Source source = new Source(iterator, fromTimeline);
+        source.next = iterator.nextLong();
+        sources.add(source);
+    }
+
+    /**
+     * Checks if an entry of a timeline is still in the feed, since some
+     * changes are applied to the timelines after they are read
+     * @param user owner of the timeline
+     * @param entry entry of the timeline
+     * @return true iff the post is in the feed of the user, false otherwise
+     */
+    private boolean isValid(User user, long entry) {
+        int via = Timeline.getVia(entry);
+        //The posts of the celebrities are read from their blogs
+        if (celebrities.contains(via) || !user.follows(via)) return false;
+
+        User viaUser = getUser(via);
+        int idPost = Timeline.getIdPost(entry);
+        return viaUser != null && viaUser.ownsPost(idPost) && posts.containsKey(idPost);
+    }
+
+    /**
+     * Adds the posts of a user to a timeline
+     * @param timelineOwner id of the owner of the timeline
+     * @param followed user whose posts are added
+     */
+    private void backfill(int timelineOwner, User followed) {
+        Timeline timeline = getTimeline(timelineOwner);
+
+        //Only the newest posts fit in the timeline, the blog is read from the newest.
+        //One more post is read, so if it doesn't fit it raises the floor of the timeline over the older ones
+        int length = timelineSize + 1;
+        long []entries = new long[length];
+        int added = 0;
+        for (int idPost : followed.getBlogBefore(Integer.MAX_VALUE)) {
+            if (added == length) break;
+            entries[length - 1 - added++] = Timeline.entry(idPost, followed.getId());
+        }
+
+        timeline.addAll(Arrays.copyOfRange(entries, length - added, length));
+    }
+
+    /**
+     * @param userId id of the user
+     * @return the timeline of the user, created if it doesn't exist
+     */
+    private Timeline getTimeline(int userId) {
+        return timelines.computeIfAbsent(userId, id -> new Timeline(timelineSize));
+    }
+
+    /**
+     * @param userId id of the user
+     * @return the user with that id, null if it's not registered
+     */
+    private User getUser(int userId) {
+        return users.get(UserRegistry.getUsername(userId));
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * This class implements a source that reads the conversion rate from the first line of a local file,
+ * so the rate can be updated without network
+ */
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+public class FileRateSource implements ExchangeRateSource {
+    private final String rateFile;
+
+    public FileRateSource(String rateFile) {
+        this.rateFile = rateFile;
+    }
+
+    public double fetchRate() throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(rateFile))) {
+            String line = reader.readLine();
+            if (line == null) throw new IOException(rateFile + " is empty");
+
+            return Double.parseDouble(line.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid rate in " + rateFile + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * This class implements a source that always returns the same conversion rate.
+ * It's used to run the server without external services
+ */
+
+public class FixedRateSource implements ExchangeRateSource {
+    private final double rate;
+
+    public FixedRateSource(double rate) {
+        this.rate = rate;
+    }
+
+    public double fetchRate() {
+        return rate;
+    }
+}
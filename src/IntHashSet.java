@@ -0,0 +1,151 @@
+/**
+ * This class implements a set of non-negative ints stored in an open addressing hash table,
+ * so the elements aren't boxed and the set uses a single array.
+ * The methods are synchronized, so it can be shared between threads
+ */
+
+import java.util.Arrays;
+
+public class IntHashSet {
+    private static final int FREE = -1; //Marks an empty slot
+    private static final int MIN_CAPACITY = 8;
+
+    private int []table;
+    private int size = 0;
+
+    public IntHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates a set that can hold the expected number of elements without growing
+     * @param expectedSize number of elements expected
+     */
+    public IntHashSet(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expectedSize) capacity <<= 1;
+
+        table = new int[capacity];
+        Arrays.fill(table, FREE);
+    }
+
+    /**
+     * @param value element to search
+     * @return the slot of the element, or the free slot where it should be added
+     */
+    private int slotOf(int value) {
+        int mask = table.length - 1;
+        int slot = hash(value) & mask;
+        while (table[slot] != FREE && table[slot] != value)
+            slot = (slot + 1) & mask;
+
+        return slot;
+    }
+
+    /**
+     * Spreads the bits of the element, since the ids are dense
+     * @param value element to hash
+     * @return the hash of the element
+     */
+    private static int hash(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Adds an element to the set
+     * @param value element to add, it must not be negative
+     * @return true iff the element wasn't in the set, false otherwise
+     */
+    public synchronized boolean add(int value) {
+        if (value < 0) throw new IllegalArgumentException("Negative element: " + value);
+
+        int slot = slotOf(value);
+        if (table[slot] == value) return false;
+
+        table[slot] = value;
+        size++;
+        //Keeps the load factor under 3/4
+        if (size > table.length * 3 / 4) resize(table.length << 1);
+
+        return true;
+    }
+
+    /**
+     * Removes an element from the set
+     * @param value element to remove
+     * @return true iff the element was in the set, false otherwise
+     */
+    public synchronized boolean remove(int value) {
+        if (value < 0) return false;
+
+        int slot = slotOf(value);
+        if (table[slot] != value) return false;
+
+        //Moves back the following elements of the cluster, so no search stops at the removed slot
+        int mask = table.length - 1;
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (table[next] != FREE) {
+            int home = hash(table[next]) & mask;
+            //The element can fill the free slot only if its home isn't between the free slot and its slot
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                table[free] = table[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[free] = FREE;
+        size--;
+
+        return true;
+    }
+
+    /**
+     * @param value element to search
+     * @return true iff the element is in the set, false otherwise
+     */
+    public synchronized boolean contains(int value) {
+        return value >= 0 && table[slotOf(value)] == value;
+    }
+
+    /**
+     * @return the number of elements in the set
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Removes all the elements from the set
+     */
+    public synchronized void clear() {
+        Arrays.fill(table, FREE);
+        size = 0;
+    }
+
+    /**
+     * @return a copy of the elements of the set
+     */
+    public synchronized int[] toArray() {
+        int []elements = new int[size];
+        int i = 0;
+        for (int value : table)
+            if (value != FREE) elements[i++] = value;
+
+        return elements;
+    }
+
+    /**
+     * Moves the elements in a table of a different capacity
+     * @param capacity capacity of the new table, it must be a power of two
+     */
+    private void resize(int capacity) {
+        int []oldTable = table;
+        table = new int[capacity];
+        Arrays.fill(table, FREE);
+
+        for (int value : oldTable)
+            if (value != FREE) table[slotOf(value)] = value;
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * This class implements a map from non-negative ints to ints stored in an open addressing hash table,
+ * so neither the keys nor the values are boxed and the map uses two parallel arrays.
+ * The keys missing from the map are mapped to 0, so it can be used as a counter.
+ * The methods are synchronized, so it can be shared between threads
+ */
+
+import java.util.Arrays;
+
+public class IntIntHashMap {
+    private static final int FREE = -1; //Marks an empty slot
+    private static final int MIN_CAPACITY = 8;
+
+    private int []keys;
+    private int []values;
+    private int size = 0;
+
+    public IntIntHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates a map that can hold the expected number of keys without growing
+     * @param expectedSize number of keys expected
+     */
+    public IntIntHashMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expectedSize) capacity <<= 1;
+
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    /**
+     * @param key key to search
+     * @return the slot of the key, or the free slot where it should be added
+     */
+    private int slotOf(int key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != FREE && keys[slot] != key)
+            slot = (slot + 1) & mask;
+
+        return slot;
+    }
+
+    /**
+     * Spreads the bits of the key, since the ids are dense
+     * @param key key to hash
+     * @return the hash of the key
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Maps a key to a value, replacing the previous one
+     * @param key key to map, it must not be negative
+     * @param value value of the key
+     */
+    public synchronized void put(int key, int value) {
+        int slot = insertionSlot(key);
+        values[slot] = value;
+    }
+
+    /**
+     * Adds a delta to the value of a key
+     * @param key key to update, it must not be negative
+     * @param delta amount to add to the value
+     * @return the new value of the key
+     */
+    public synchronized int increment(int key, int delta) {
+        int slot = insertionSlot(key);
+        values[slot] += delta;
+
+        return values[slot];
+    }
+
+    /**
+     * Finds the slot of a key, adding the key with value 0 if it's missing
+     * @param key key to search, it must not be negative
+     * @return the slot of the key
+     */
+    private int insertionSlot(int key) {
+        if (key < 0) throw new IllegalArgumentException("Negative key: " + key);
+
+        int slot = slotOf(key);
+        if (keys[slot] == key) return slot;
+
+        //Keeps the load factor under 3/4
+        if (size + 1 > keys.length * 3 / 4) {
+            resize(keys.length << 1);
+            slot = slotOf(key);
+        }
+
+        keys[slot] = key;
+        values[slot] = 0;
+        size++;
+
+        return slot;
+    }
+
+    /**
+     * @param key key to search
+     * @return the value of the key, 0 if the key isn't in the map
+     */
+    public synchronized int get(int key) {
+        if (key < 0) return 0;
+
+        int slot = slotOf(key);
+        return keys[slot] == key ? values[slot] : 0;
+    }
+
+    /**
+     * @return the number of keys in the map
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return a copy of the keys of the map
+     */
+    public synchronized int[] keys() {
+        int []elements = new int[size];
+        int i = 0;
+        for (int key : keys)
+            if (key != FREE) elements[i++] = key;
+
+        return elements;
+    }
+
+    /**
+     * Moves the entries in tables of a different capacity
+     * @param capacity capacity of the new tables, it must be a power of two
+     */
+    private void resize(int capacity) {
+        int []oldKeys = keys;
+        int []oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == FREE) continue;
+
+            int slot = slotOf(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+}
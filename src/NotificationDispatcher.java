@@ -0,0 +1,150 @@
+/**
+ * This class implements the dispatcher of the follower notifications.
+ * The notifications are queued for each client and delivered by the dispatcher
+ * threads, so a slow or dead client doesn't stall the requests that generate them.
+ * The notifications are pushed on the connection of the clients that subscribed,
+ * the RMI callbacks are used only for the other clients.
+ * The notifications of the same client are delivered in order by one thread at a time.
+ * The notifications about the same follower not delivered yet are coalesced,
+ * keeping only the last one, and the clients that can't be reached are unregistered
+ */
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+public class NotificationDispatcher {
+    private final Map<String, NotifyNewFollower> registeredClient;
+    private final Map<String, Session> loggedUsers;
+    private final Executor dispatcherThreads;
+    private final long timeout; //Maximum time a client can leave the notifications pushed unread
+    private final Map<String, ClientQueue> queues; //Queue of the notifications of each client
+
+    //Notifications not delivered yet to a client
+    private static class ClientQueue {
+        //Username of the follower and true if it's a new follower, false if it's a lost follower
+        private final Map<String, Boolean> notifications = new LinkedHashMap<>();
+        private boolean scheduled = false; //True if a dispatcher thread is delivering the notifications
+        private boolean removed = false; //True if the queue was drained and removed from the map
+    }
+
+    public NotificationDispatcher(Map<String, NotifyNewFollower> registeredClient, Map<String, Session> loggedUsers, Executor dispatcherThreads, long timeout) {
+        this.registeredClient = registeredClient;
+        this.loggedUsers = loggedUsers;
+        this.dispatcherThreads = dispatcherThreads;
+        this.timeout = timeout;
+
+        queues = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Queues a notification for a client
+     * @param user the username of the user to notify
+     * @param follower the username of the follower
+     * @param followed true if it's a new follower, false if it's a lost follower
+     */
+    public void enqueue(String user, String follower, boolean followed) {
+        //There is no client to notify
+        if (!loggedUsers.containsKey(user) && !registeredClient.containsKey(user)) return;
+
+        ClientQueue queue;
+        boolean schedule;
+        while (true) {
+            queue = queues.computeIfAbsent(user, u -> new ClientQueue());
+
+            synchronized (queue) {
+                //The queue was removed after it was got from the map, so a new one is created
+                if (queue.removed) continue;
+
+                //Replaces the notification about the same follower, moving it at the end
+                queue.notifications.remove(follower);
+                queue.notifications.put(follower, followed);
+
+                schedule = !queue.scheduled;
+                queue.scheduled = true;
+                break;
+            }
+        }
+
+        if (schedule) schedule(user, queue);
+    }
+
+    /**
+     * Hands the queue of a client to a dispatcher thread
+     * @param user the username of the user to notify
+     * @param queue queue of the notifications of the client
+     */
+    private void schedule(String user, ClientQueue queue) {
+        try {
+            dispatcherThreads.execute(() -> deliver(user, queue));
+        } catch (RejectedExecutionException ignored) {} //Server closing, the notifications are dropped
+    }
+
+    /**
+     * Delivers the notifications of a client until its queue is empty, then removes the queue
+     * @param user the username of the user to notify
+     * @param queue queue of the notifications of the client
+     */
+    private void deliver(String user, ClientQueue queue) {
+        while (true) {
+            Map<String, Boolean> notifications;
+            synchronized (queue) {
+                if (queue.notifications.isEmpty()) {
+                    queue.scheduled = false;
+                    //The queue is removed, so the map keeps only the clients with notifications to deliver
+                    queue.removed = true;
+                    queues.remove(user, queue);
+                    return;
+                }
+
+                notifications = new LinkedHashMap<>(queue.notifications);
+                queue.notifications.clear();
+            }
+
+            //Pushes the notifications on the connection of the client if it subscribed
+            Session session = loggedUsers.get(user);
+            if (session != null && session.isSubscribed()) {
+                push(session, notifications);
+                continue;
+            }
+
+            //Checks if the client is still registered
+            NotifyNewFollower clientStub = registeredClient.get(user);
+            if (clientStub == null) continue;
+
+            try {
+                for (Map.Entry<String, Boolean> notification : notifications.entrySet()) {
+                    if (notification.getValue())
+                        clientStub.addNewFollower(notification.getKey());
+                    else
+                        clientStub.removeFollower(notification.getKey());
+                }
+            } catch (RemoteException e) {
+                //The client can't be reached, so it's unregistered
+                System.err.println("Error while notifying " + user + ", client unregistered: " + e.getMessage());
+                registeredClient.remove(user, clientStub);
+            }
+        }
+    }
+
+    /**
+     * Queues the notifications on the connection of a client, the reactor of the client writes them
+     * @param session session of the client
+     * @param notifications notifications to push
+     */
+    private void push(Session session, Map<String, Boolean> notifications) {
+        try {
+            for (Map.Entry<String, Boolean> notification : notifications.entrySet())
+                session.push(notification.getKey(), notification.getValue(), timeout);
+        } catch (IOException e) {
+            //The client doesn't read the notifications or the connection was closed
+            System.err.println("Error while notifying " + session.getUsername() + ", client disconnected: " + e.getMessage());
+            session.close();
+            session.closeConnection();
+        }
+    }
+}
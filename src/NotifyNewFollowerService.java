@@ -3,12 +3,12 @@
  */
 
 import java.rmi.RemoteException;
-import java.util.List;
+import java.util.Set;
 
 public class NotifyNewFollowerService implements NotifyNewFollower{
-    private final List<String> follower;
+    private final Set<String> follower; //Guarded by its own monitor, it's shared with the client
 
-    public NotifyNewFollowerService(List<String> follower) {
+    public NotifyNewFollowerService(Set<String> follower) {
         this.follower = follower;
     }
 
@@ -16,15 +16,20 @@ public class NotifyNewFollowerService implements NotifyNewFollower{
      * Adds a new follower to the followers list
      * @param follower username of the new follower
      */
-    public synchronized void addNewFollower(String follower) throws RemoteException {
-        this.follower.add(follower);
+    public void addNewFollower(String follower) throws RemoteException {
+        //The notifications are coalesced, so the follower could be already in the set
+        synchronized (this.follower) {
+            this.follower.add(follower);
+        }
     }
 
     /**
      * Removes a follower from the followers list
      * @param exFollower username of the follower to remove
      */
-    public synchronized void removeFollower(String exFollower) throws RemoteException {
-        this.follower.remove(exFollower);
+    public void removeFollower(String exFollower) throws RemoteException {
+        synchronized (this.follower) {
+            this.follower.remove(exFollower);
+        }
     }
 }
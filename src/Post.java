@@ -2,65 +2,63 @@
  * This class implements a post
  */
 
-import com.google.gson.Gson;
 import com.google.gson.stream.JsonWriter;
 
 import java.io.IOException;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Post implements BufferedSerialization {
-    private static int nextIdPost = 0;
+    private static final AtomicInteger nextIdPost = new AtomicInteger(); //Posts are created in parallel
     private final int idPost;
-    private final String author;
+    private final int author; //Id of the author
     private final String postTitle;
     private final String postContent;
     private final Set<Comment> comments;
-    private final Set<String> upvotes;
-    private final Set<String> downvotes;
-    private final Map<String, Integer> commentsStats; //Number of comments on this post for each user
-    private final Set<String> rewinner; //Users who rewinned this post
+    private final IntHashSet upvotes; //Ids of the users who upvoted this post
+    private final IntHashSet downvotes; //Ids of the users who downvoted this post
+    private final IntIntHashMap commentsStats; //Number of comments on this post for each user id
+    private final IntHashSet rewinner; //Ids of the users who rewinned this post
     private int revenueIteration; //Number of time this post was evaluated
 
     //These attributes are used to calculate the revenue
-    private transient final Set<String> recentUpvotes;
-    private transient final Set<String> recentDownvotes;
-    private transient final Set<String> recentCommenters;
+    private transient final IntHashSet recentUpvotes;
+    private transient final IntHashSet recentDownvotes;
+    private transient final IntHashSet recentCommenters;
 
-    public Post(String author, String postTitle, String postContent) {
-        this.idPost = nextIdPost++;
+    public Post(int author, String postTitle, String postContent) {
+        this.idPost = nextIdPost.getAndIncrement();
         this.author = author;
         this.postTitle = postTitle;
         this.postContent = postContent;
         comments = ConcurrentHashMap.newKeySet();
-        upvotes = ConcurrentHashMap.newKeySet();
-        downvotes = ConcurrentHashMap.newKeySet();
-        commentsStats = new ConcurrentHashMap<>();
-        rewinner = ConcurrentHashMap.newKeySet();
+        upvotes = new IntHashSet();
+        downvotes = new IntHashSet();
+        commentsStats = new IntIntHashMap();
+        rewinner = new IntHashSet();
         revenueIteration = 1;
 
-        recentUpvotes = ConcurrentHashMap.newKeySet();
-        recentDownvotes = ConcurrentHashMap.newKeySet();
-        recentCommenters = ConcurrentHashMap.newKeySet();
+        recentUpvotes = new IntHashSet();
+        recentDownvotes = new IntHashSet();
+        recentCommenters = new IntHashSet();
     }
 
     /**
      * Creates a new post. This constructor should be used only while deserializing
      * @param idPost post id
-     * @param author author
+     * @param author id of the author
      * @param postTitle post title
      * @param postContent post content
      * @param comments comments under the post
-     * @param upvotes users who upvoted the post
-     * @param downvotes users who downvoted the post
-     * @param commentsStats how many comment made each user under this post
-     * @param rewinner users who rewinned this post
+     * @param upvotes ids of the users who upvoted the post
+     * @param downvotes ids of the users who downvoted the post
+     * @param commentsStats how many comment made each user id under this post
+     * @param rewinner ids of the users who rewinned this post
      * @param revenueIteration number of time this post was evaluated
      */
-    public Post(int idPost, String author, String postTitle, String postContent, Set<Comment> comments, Set<String> upvotes, Set<String> downvotes, Map<String, Integer> commentsStats, Set<String> rewinner, int revenueIteration) {
+    public Post(int idPost, int author, String postTitle, String postContent, Set<Comment> comments, IntHashSet upvotes, IntHashSet downvotes, IntIntHashMap commentsStats, IntHashSet rewinner, int revenueIteration) {
         this.idPost = idPost;
         this.author = author;
         this.postTitle = postTitle;
@@ -72,11 +70,11 @@ public class Post implements BufferedSerialization {
         this.rewinner = rewinner;
         this.revenueIteration = revenueIteration;
 
-        recentUpvotes = ConcurrentHashMap.newKeySet();
-        recentDownvotes = ConcurrentHashMap.newKeySet();
-        recentCommenters = ConcurrentHashMap.newKeySet();
+        recentUpvotes = new IntHashSet();
+        recentDownvotes = new IntHashSet();
+        recentCommenters = new IntHashSet();
 
-        if (idPost >= nextIdPost) nextIdPost = idPost + 1;
+        nextIdPost.accumulateAndGet(idPost + 1, Math::max);
     }
 
     /**
@@ -88,19 +86,19 @@ public class Post implements BufferedSerialization {
     }
 
     /**
-     * Returns the author of the post
+     * Returns the id of the author of the post
      * @return author
      */
-    public String getAuthor() {
+    public int getAuthor() {
         return author;
     }
 
     /**
-     * Add the username of the user who wants to upvote this post
-     * @param user username of the user who wants to upvote this post
+     * Add the id of the user who wants to upvote this post
+     * @param user id of the user who wants to upvote this post
      * @return true iff the user didn't previously upvoted the post, false otherwise
      */
-    public boolean addUpvote(String user) {
+    public boolean addUpvote(int user) {
         synchronized (recentUpvotes) {
             if (upvotes.add(user)) {
                 recentUpvotes.add(user);
@@ -111,11 +109,11 @@ public class Post implements BufferedSerialization {
     }
 
     /**
-     * Add the username of the user who wants to downvote this post
-     * @param user username of the user who wants to downvote this post
+     * Add the id of the user who wants to downvote this post
+     * @param user id of the user who wants to downvote this post
      * @return true iff the user didn't previously downvoted the post, false otherwise
      */
-    public boolean addDownvote(String user) {
+    public boolean addDownvote(int user) {
         synchronized (recentDownvotes) {
             if (downvotes.add(user)) {
                 recentDownvotes.add(user);
@@ -135,43 +133,52 @@ public class Post implements BufferedSerialization {
             recentCommenters.add(comment.getAuthor());
 
             //Increments the number of comment that the author of the comment has done
-            commentsStats.merge(comment.getAuthor(), 1, Integer::sum);
+            commentsStats.increment(comment.getAuthor(), 1);
         }
     }
 
     /**
-     * Add the username to the rewinner list
-     * @param username username of the user that rewinned the post
+     * Add the user to the rewinner list
+     * @param user id of the user that rewinned the post
      * @return true iff the user didn't already rewinned the post, false otherwise
      */
-    public boolean addRewinner(String username) {
-        return rewinner.add(username);
+    public boolean addRewinner(int user) {
+        return rewinner.add(user);
     }
 
     /**
-     * Remove the username from the rewinner list
-     * @param username username of the user that rewinned the post
+     * Remove the user from the rewinner list
+     * @param user id of the user that rewinned the post
      * @return true iff the user rewinned the post, false otherwise
      */
-    public boolean removeRewinner(String username) {
-        return rewinner.remove(username);
+    public boolean removeRewinner(int user) {
+        return rewinner.remove(user);
+    }
+
+    /**
+     * Checks if the user rewinned this post
+     * @param user id of the user to search
+     * @return true iff user rewinned this post, false otherwise
+     */
+    public boolean isRewinner(int user) {
+        return rewinner.contains(user);
     }
 
     /**
      * Checks if the user upvoted this post
-     * @param user username of the user to search
+     * @param user id of the user to search
      * @return true iff user upvoted this post, false otherwise
      */
-    public boolean containsUpvote(String user) {
+    public boolean containsUpvote(int user) {
         return upvotes.contains(user);
     }
 
     /**
      * Checks if the user downvoted this post
-     * @param user username of the user to search
+     * @param user id of the user to search
      * @return true iff user downvoted this post, false otherwise
      */
-    public boolean containsDownvote(String user) {
+    public boolean containsDownvote(int user) {
         return downvotes.contains(user);
     }
 
@@ -179,13 +186,11 @@ public class Post implements BufferedSerialization {
      * Return the users who upvoted this post recently and
      * resets the list
      *
-     * @return the users who upvoted this post recently
+     * @return the ids of the users who upvoted this post recently
      */
-    public Set<String> getRecentUpvotesAndReset() {
+    public IntHashSet getRecentUpvotesAndReset() {
         synchronized (recentUpvotes) {
-            Set<String> recentUpvotesCopy = new HashSet<>(recentUpvotes);
-            recentUpvotes.clear();
-            return recentUpvotesCopy;
+            return reset(recentUpvotes);
         }
     }
 
@@ -197,34 +202,45 @@ public class Post implements BufferedSerialization {
      */
     public int getRecentDownvotesAndReset() {
         synchronized (recentDownvotes){
-            int downvotes = recentDownvotes.size();
-            recentDownvotes.clear();
-            return downvotes;
+            return reset(recentDownvotes).size();
         }
     }
 
     /**
      * Return the recent comments and resets the list
      *
-     * @return the recent comments
+     * @return the ids of the recent commenters
      */
-    public Set<String> getRecentCommenters() {
+    public IntHashSet getRecentCommenters() {
         synchronized (recentCommenters) {
-            Set<String> copy = new HashSet<>(recentCommenters);
-            recentCommenters.clear();
-
-            return copy;
+            return reset(recentCommenters);
         }
     }
 
+    /**
+     * Moves the elements of a set in a new set
+     * @param set set to empty
+     * @return a set with the elements removed
+     */
+    private static IntHashSet reset(IntHashSet set) {
+        int []elements = set.toArray();
+        set.clear();
+
+        IntHashSet copy = new IntHashSet(elements.length);
+        for (int element : elements)
+            copy.add(element);
+
+        return copy;
+    }
+
     /**
      * Returns the number of comments that this user made
      * on this post
-     * @param username the username of the user to check
+     * @param user the id of the user to check
      * @return the number of comments
      */
-    public int getNumberOfComments(String username) {
-        return commentsStats.get(username);
+    public int getNumberOfComments(int user) {
+        return commentsStats.get(user);
     }
 
     /**
@@ -242,46 +258,45 @@ public class Post implements BufferedSerialization {
     }
 
     /**
-     * Returns title, content, number of upvotes, number of downvotes and comments in json format
-     * @return useful information about the post in json format
+     * Writes title, content, number of upvotes, number of downvotes and comments in json format
+     * @param writer writer used to write the post as json object
      */
-    public synchronized String toJson() {
-        //Initializes the string with the post basic information
-        StringBuilder serializedPost = new StringBuilder("{\"postTitle\":\"" + postTitle + "\", \"postContent\":\"" + postContent + "\", \"upvotes\":" + upvotes.size() + ", \"downvotes\":" + downvotes.size() + ", \"comments\": [");
-        boolean firstEntry = true;
-
-        //Serializes all the comments
-        for (Comment comment : comments) {
-            //If this isn't the first comment, adds a ','
-            if (!firstEntry) serializedPost.append(", ");
-
-            serializedPost.append(comment.toJson());
+    public synchronized void toJson(JsonWriter writer) throws IOException {
+        //Writes the post basic information
+        writer.beginObject();
+        writer.name("postTitle").value(postTitle);
+        writer.name("postContent").value(postContent);
+        writer.name("upvotes").value(upvotes.size());
+        writer.name("downvotes").value(downvotes.size());
 
-            firstEntry = false;
-        }
-        serializedPost.append("]}");
+        //Writes all the comments
+        writer.name("comments");
+        writer.beginArray();
+        for (Comment comment : comments)
+            comment.toJson(writer);
+        writer.endArray();
 
-        return serializedPost.toString();
+        writer.endObject();
     }
 
     /**
-     * @return the list of the users who rewinned this post
+     * @return the ids of the users who rewinned this post
      */
-    public Set<String> getRewinner() {
-        synchronized (rewinner) {
-            return new HashSet<>(rewinner);
-        }
+    public int[] getRewinner() {
+        return rewinner.toArray();
     }
 
     /**
-     * Returns post id, author and the title in json format
-     * @return basics information about the post in json format
+     * Writes post id, author and the title in json format
+     * @param writer writer used to write the post as json object
+     * @param user id of the user who is showing the post
      */
-    public String basicInfoToJson(String username) {
-        String response = "{\"idPost\": " + idPost + ", \"author\": \"" + author + "\", \"postTitle\": \"" + postTitle;
-        if (rewinner.contains(username)) response += " [rewinned by " + username + "]";
-        response += "\"}";
-        return response;
+    public void basicInfoToJson(JsonWriter writer, int user) throws IOException {
+        writer.beginObject();
+        writer.name("idPost").value(idPost);
+        writer.name("author").value(UserRegistry.getUsername(author));
+        writer.name("postTitle").value(rewinner.contains(user) ? postTitle + " [rewinned by " + UserRegistry.getUsername(user) + "]" : postTitle);
+        writer.endObject();
     }
 
     /**
@@ -291,14 +306,14 @@ public class Post implements BufferedSerialization {
     public synchronized void toJsonFile(JsonWriter writer) throws IOException {
         writer.beginObject();
         writer.name("idPost").value(idPost);
-        writer.name("author").value(author);
+        writer.name("author").value(UserRegistry.getUsername(author));
         writer.name("postTitle").value(postTitle);
         writer.name("postContent").value(postContent);
         commentsCollectionToJson(writer, "comments", comments);
-        stringCollectionToJson(writer, "upvotes", upvotes);
-        stringCollectionToJson(writer, "downvotes", downvotes);
+        usersToJson(writer, "upvotes", upvotes);
+        usersToJson(writer, "downvotes", downvotes);
         mapToJson(writer, "commentsStats", commentsStats);
-        stringCollectionToJson(writer, "rewinner", rewinner);
+        usersToJson(writer, "rewinner", rewinner);
         writer.name("revenueIteration").value(revenueIteration);
         writer.endObject();
     }
@@ -310,44 +325,42 @@ public class Post implements BufferedSerialization {
      * @param collection collection to serialize
      */
     private void commentsCollectionToJson(JsonWriter writer, String name, Collection<Comment> collection) throws IOException {
-        Gson gson = new Gson();
-
         writer.name(name);
         writer.beginArray();
         for (Comment comment : collection)
-            gson.toJson(comment, Comment.class, writer);
+            comment.toJson(writer);
         writer.endArray();
         writer.flush();
     }
 
     /**
-     * Writes a collection of string to a file in a json format
+     * Writes a set of users to a file in a json format, as usernames
      * @param writer writer used to write the object as json array
      * @param name name of the json entry
-     * @param collection collection to serialize
+     * @param userIds ids of the users to serialize
      */
-    private void stringCollectionToJson(JsonWriter writer, String name, Collection<String> collection) throws IOException {
+    private void usersToJson(JsonWriter writer, String name, IntHashSet userIds) throws IOException {
         writer.name(name);
         writer.beginArray();
-        for (String s : collection) {
-            writer.value(s);
+        for (int userId : userIds.toArray()) {
+            writer.value(UserRegistry.getUsername(userId));
         }
         writer.endArray();
         writer.flush();
     }
 
     /**
-     * Writes a map to a file in a json format
+     * Writes a map to a file in a json format, with the usernames as keys
      * @param writer writer used to write the object as json array
      * @param name name of the json entry
-     * @param map map to serialize
+     * @param map map to serialize, with the ids of the users as keys
      */
-    private void mapToJson(JsonWriter writer, String name, Map<String, Integer> map) throws IOException {
+    private void mapToJson(JsonWriter writer, String name, IntIntHashMap map) throws IOException {
         writer.name(name);
         writer.beginObject();
 
-        for (String key : map.keySet())
-            writer.name(key).value(map.get(key));
+        for (int userId : map.keys())
+            writer.name(UserRegistry.getUsername(userId)).value(map.get(userId));
 
         writer.endObject();
         writer.flush();
@@ -0,0 +1,36 @@
+/**
+ * This class implements a source that gets the conversion rate from random.org
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.net.URLConnection;
+
+public class RandomOrgRateSource implements ExchangeRateSource {
+    private static final String RATE_URL = "https://www.random.org/decimal-fractions/?num=1&dec=10&col=2&format=plain&rnd=new";
+
+    private final int timeout; //Maximum time to wait for random.org
+
+    public RandomOrgRateSource(int timeout) {
+        this.timeout = timeout;
+    }
+
+    public double fetchRate() throws IOException {
+        //Opens the connection to get the conversion rate
+        URLConnection connection = new URL(RATE_URL).openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
+            //Reads the conversion rate from the stream
+            String line = reader.readLine();
+            if (line == null) throw new IOException("No content received from random.org");
+
+            return Double.parseDouble(line);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid rate received from random.org: " + e.getMessage());
+        }
+    }
+}
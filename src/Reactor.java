@@ -0,0 +1,248 @@
+/**
+ * This class implements a task that multiplexes a part of the client channels.
+ * Each reactor has its own selector and its own queue of channels ready to be
+ * served again, so the server can use more cores for the I/O
+ */
+
+import java.io.IOException;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class Reactor implements Runnable {
+    //Response code sent when the request is dropped because the server is overloaded
+    private static final int SERVER_BUSY = -3;
+
+    private final Selector selector;
+    private final Queue<SocketChannel> newClients;
+    private final Queue<Registrable> readyToBeRegistered;
+
+    private final Executor threadPool;
+    private final Executor heavyThreadPool; //Threadpool for the requests that can take long
+    private final boolean shedLoad; //True if the requests rejected by the threadpool are dropped
+    private final BufferPool bufferPool;
+
+    private final Map<String, User> users;
+    private final Map<Integer, Post> posts;
+    private final SessionReaper sessionReaper;
+    private final CallbackHandler callbackHandler;
+    private final ExchangeRateProvider exchangeRateProvider;
+    private final FeedCache feedCache;
+    private final AtomicBoolean stateChanged;
+
+    public Reactor(Executor threadPool, Executor heavyThreadPool, boolean shedLoad, BufferPool bufferPool, Map<String, User> users, Map<Integer, Post> posts, SessionReaper sessionReaper, CallbackHandler callbackHandler, ExchangeRateProvider exchangeRateProvider, FeedCache feedCache, AtomicBoolean stateChanged) throws IOException {
+        this.threadPool = threadPool;
+        this.heavyThreadPool = heavyThreadPool;
+        this.shedLoad = shedLoad;
+        this.bufferPool = bufferPool;
+        this.users = users;
+        this.posts = posts;
+        this.sessionReaper = sessionReaper;
+        this.callbackHandler = callbackHandler;
+        this.exchangeRateProvider = exchangeRateProvider;
+        this.feedCache = feedCache;
+        this.stateChanged = stateChanged;
+
+        selector = Selector.open();
+        newClients = new ConcurrentLinkedQueue<>();
+        readyToBeRegistered = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * @return the selector of this reactor
+     */
+    public Selector getSelector() {
+        return selector;
+    }
+
+    /**
+     * Hands a new client to this reactor
+     * @param client channel of the new client
+     */
+    public void addClient(SocketChannel client) {
+        newClients.add(client);
+        //Wakes up the selector to register the channel
+        selector.wakeup();
+    }
+
+    public void run() {
+        try {
+            while (true) {
+                //Waits for an operation
+                selector.select();
+
+                if (!selector.isOpen()) break; //Thread termination
+
+                //Registers the new clients in read mode
+                SocketChannel client;
+                while ((client = newClients.poll()) != null) {
+                    try {
+                        client.configureBlocking(false); //Sets non-blocking mode
+
+                        //Allocates the state of the connection and attach it to the channel
+                        ClientConnection connection = new ClientConnection(bufferPool);
+                        SelectionKey key = client.register(selector, SelectionKey.OP_READ, connection);
+                        connection.bind(key, readyToBeRegistered);
+                    } catch (IOException e) {
+                        System.err.println("Error while registering a client: " + e.getMessage());
+                        try {client.close();} catch (Exception ignored) {}
+                    }
+                }
+
+                //Updates the interest set of the channels ready to be served again
+                Registrable r;
+                while ((r = readyToBeRegistered.poll()) != null) {
+                    SelectionKey key = r.getKey();
+                    ClientConnection connection = (ClientConnection) key.attachment();
+
+                    //The worker finished serving the request
+                    if (r.getEvent() == Registrable.RESPONSE_READY) connection.setServing(false);
+
+                    if (!key.isValid()) {
+                        //The channel was closed while it was served, the worker doesn't use the connection anymore
+                        if (r.getEvent() == Registrable.RESPONSE_READY) connection.release();
+                        continue;
+                    }
+
+                    try {
+                        if (r.getEvent() == Registrable.CLOSE) {
+                            closeConnection(key);
+                        } else {
+                            //Writes the frames queued and waits for the next operation on the channel
+                            updateInterest(key);
+                        }
+                    } catch (IOException | CancelledKeyException e) {
+                        System.err.println("Error while updating a channel: " + e.getMessage());
+                        closeConnection(key);
+                    }
+                }
+
+                //Gets the ready key
+                Set<SelectionKey> readyKeys = selector.selectedKeys();
+                Iterator<SelectionKey> iterator = readyKeys.iterator();
+
+                while (iterator.hasNext()) {
+                    //Gets the key
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    //The channel was closed while it was served
+                    if (!key.isValid()) continue;
+
+                    try {
+                        if (key.isReadable()) { //Channel ready in read mode
+                            client = (SocketChannel) key.channel();
+                            RequestDecoder requestDecoder = ((ClientConnection) key.attachment()).getRequestDecoder();
+
+                            //Reads the bytes available without waiting the whole request
+                            if (requestDecoder.read(client) == -1) { //Client disconnected
+                                closeConnection(key);
+                                continue;
+                            }
+
+                            //Serves the request only when it's arrived completely
+                            byte []request = requestDecoder.nextRequest();
+                            if (request != null) dispatchRequest(key, request);
+                        } else if (key.isWritable()) { //Channel ready in write mode
+                            //Resumes writing the frames left by the previous write
+                            updateInterest(key);
+                        }
+                    } catch (IOException | CancelledKeyException e) {
+                        System.err.println("Error serving requests: " + e.getMessage());
+                        closeConnection(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("IOException: " + e.getMessage());
+        } catch (ClosedSelectorException ignored) {}
+    }
+
+    /**
+     * Writes the frames queued on the connection without waiting the client,
+     * then sets the interest set of the key:
+     * write if some bytes are left, none while a worker serves a request, read otherwise
+     * @param key key of the client
+     * @throws IOException if some error occurs while writing to the channel
+     */
+    private void updateInterest(SelectionKey key) throws IOException {
+        ClientConnection connection = (ClientConnection) key.attachment();
+
+        if (!connection.flush((SocketChannel) key.channel())) {
+            //Waits for the client to read, then the write is resumed
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else if (connection.isServing()) {
+            //The next response isn't ready yet
+            key.interestOps(0);
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+
+            //Serves the requests that the client already sent
+            byte []request = connection.getRequestDecoder().nextRequest();
+            if (request != null) dispatchRequest(key, request);
+        }
+    }
+
+    /**
+     * Cancels the key and closes the channel of a client. The connection is released now
+     * if no worker is serving it, otherwise when the worker has finished
+     * @param key key of the client
+     */
+    private void closeConnection(SelectionKey key) {
+        ClientConnection connection = (ClientConnection) key.attachment();
+
+        key.cancel();
+        try {key.channel().close();} catch (Exception ignored) {}
+
+        if (!connection.isServing()) connection.release();
+    }
+
+    /**
+     * Hands a complete request to a ReaderWorker
+     * @param key key of the client who sent the request
+     * @param request request to serve
+     */
+    private void dispatchRequest(SelectionKey key, byte []request) {
+        //Stops waiting operations while the request is served
+        key.interestOps(0);
+        ((ClientConnection) key.attachment()).setServing(true);
+
+        ReaderWorker readerWorker = new ReaderWorker(key, request, users, posts, sessionReaper, callbackHandler, exchangeRateProvider, feedCache, readyToBeRegistered, selector, stateChanged);
+        //The heavy requests are served by their own threadpool, so they don't delay the cheap ones
+        boolean heavyRequest = ReaderWorker.isHeavyRequest(request, ((ClientConnection) key.attachment()).isBinaryProtocol());
+        try {
+            (heavyRequest ? heavyThreadPool : threadPool).execute(readerWorker);
+        } catch (RejectedExecutionException e) { //The queue of the threadpool is full
+            if (shedLoad) {
+                rejectRequest(key, request);
+            } else {
+                //Serves the request in the reactor, slowing down the reads of all its clients
+                readerWorker.run();
+            }
+        }
+    }
+
+    /**
+     * Answers immediately that the server is busy, without serving the request
+     * @param key key of the client who sent the request
+     * @param request request dropped
+     */
+    private void rejectRequest(SelectionKey key, byte []request) {
+        ClientConnection connection = (ClientConnection) key.attachment();
+
+        //With the binary protocol the response must carry the identifier of the request
+        Integer requestId = connection.isBinaryProtocol() ? BinaryRequest.readRequestId(request) : null;
+        connection.setResponse(requestId, SERVER_BUSY, null);
+        connection.queueResponse();
+        connection.setServing(false);
+
+        //Waits to send the response
+        key.interestOps(SelectionKey.OP_WRITE);
+    }
+}
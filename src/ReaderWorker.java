@@ -3,307 +3,291 @@
  * prepares the response
  */
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
 
 import java.io.IOException;
-import java.net.Socket;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.rmi.RemoteException;
+import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Set;
+import java.util.Queue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ReaderWorker implements Runnable {
+    //Text request used to switch the connection to the binary protocol
+    private static final byte []NEGOTIATION_REQUEST = BinaryRequest.NEGOTIATION_REQUEST.getBytes(StandardCharsets.UTF_8);
+
+    //Number of posts of a page of the blog or of the feed when the client doesn't choose it
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    //Maximum number of posts of a page of the blog or of the feed
+    private static final int MAX_PAGE_SIZE = 100;
+
+    //Maximum number of tags of a user
+    private static final int MAX_TAGS = 5;
+
+    //Locks of the users and of the posts changed together by the post operations.
+    //The stripes of the users are always locked before the stripes of the posts
+    private static final StripedLock USER_LOCKS = new StripedLock(64);
+    private static final StripedLock POST_LOCKS = new StripedLock(64);
+
+    //Handler of a decoded request
+    @FunctionalInterface
+    private interface RequestHandler {
+        void handle(ReaderWorker worker, DecodedRequest request) throws IOException;
+    }
+
+    //Handlers of the requests indexed by opcode
+    private static final RequestHandler []HANDLERS = new RequestHandler[BinaryRequest.LAST_OPCODE + 1];
+    static {
+        HANDLERS[BinaryRequest.LOGIN] = (worker, r) -> worker.login(r.getString(0), r.getString(1));
+        HANDLERS[BinaryRequest.LOGOUT] = (worker, r) -> worker.logout();
+        HANDLERS[BinaryRequest.LIST_USERS] = (worker, r) -> worker.listUsers(r.getInt(0));
+        HANDLERS[BinaryRequest.LIST_FOLLOWING] = (worker, r) -> worker.listFollowing();
+        HANDLERS[BinaryRequest.POST] = (worker, r) -> worker.createPost(r.getString(0), r.getString(1));
+        HANDLERS[BinaryRequest.DELETE] = (worker, r) -> worker.deletePost(r.getInt(0));
+        HANDLERS[BinaryRequest.FOLLOW] = (worker, r) -> worker.followUser(r.getString(0));
+        HANDLERS[BinaryRequest.UNFOLLOW] = (worker, r) -> worker.unfollowUser(r.getString(0));
+        HANDLERS[BinaryRequest.RATE] = (worker, r) -> worker.ratePost(r.getInt(0), r.getInt(1));
+        HANDLERS[BinaryRequest.BLOG] = (worker, r) -> worker.viewBlog(r.getInt(0), r.getInt(1));
+        HANDLERS[BinaryRequest.SHOW_POST] = (worker, r) -> worker.showPost(r.getInt(0));
+        HANDLERS[BinaryRequest.SHOW_FEED] = (worker, r) -> worker.showFeed(r.getInt(0), r.getInt(1));
+        HANDLERS[BinaryRequest.REWIN] = (worker, r) -> worker.rewinPost(r.getInt(0));
+        HANDLERS[BinaryRequest.COMMENT] = (worker, r) -> worker.addComment(r.getInt(0), r.getString(1));
+        HANDLERS[BinaryRequest.WALLET] = (worker, r) -> worker.getWallet();
+        HANDLERS[BinaryRequest.WALLET_BTC] = (worker, r) -> worker.getWalletBTC();
+        HANDLERS[BinaryRequest.GET_FOLLOWERS] = (worker, r) -> worker.sendFollowers();
+        HANDLERS[BinaryRequest.SUBSCRIBE] = (worker, r) -> worker.subscribe();
+    }
+
     private final SelectionKey key;
     private final SocketChannel client;
-    private final ByteBuffer byteBuffer;
+    private final ClientConnection connection;
+    private final byte []request;
 
     private final Map<String, User> users;
     private final Map<Integer, Post> posts;
     private final CallbackHandler callbackHandler;
-    private final Map<String, Socket> loggedUsers;
-    private final Set<Registrable> readyToBeRegistered;
+    private final SessionReaper sessionReaper;
+    private final ExchangeRateProvider exchangeRateProvider;
+    private final FeedCache feedCache;
+    private final Queue<Registrable> readyToBeRegistered;
 
     private final Selector selector;
 
     private final AtomicBoolean stateChanged;
 
-    private JsonElement jsonElement = null;
+    private Integer requestId = null; //Identifier of the request, null with the text protocol
+    private int responseCode = 0;
+    private ResponseWriter responseBody = null;
+    private boolean legacyRequest = false; //True if the request ends with the username, as sent by the clients that predate the sessions
+
+    public ReaderWorker(SelectionKey key, byte []request, Map<String, User> users, Map<Integer, Post> posts, SessionReaper sessionReaper, CallbackHandler callbackHandler, ExchangeRateProvider exchangeRateProvider, FeedCache feedCache, Queue<Registrable> readyToBeRegistered, Selector selector, AtomicBoolean stateChanged) {
+        this(key, (SocketChannel) key.channel(), (ClientConnection) key.attachment(), request, users, posts, sessionReaper, callbackHandler, exchangeRateProvider, feedCache, readyToBeRegistered, selector, stateChanged);
+    }
+
+    /**
+     * Creates a worker that serves a request of a connection not registered on a selector.
+     * The request must be served calling serve() instead of run()
+     */
+    public ReaderWorker(SocketChannel client, ClientConnection connection, byte []request, Map<String, User> users, Map<Integer, Post> posts, SessionReaper sessionReaper, CallbackHandler callbackHandler, ExchangeRateProvider exchangeRateProvider, FeedCache feedCache, AtomicBoolean stateChanged) {
+        this(null, client, connection, request, users, posts, sessionReaper, callbackHandler, exchangeRateProvider, feedCache, null, null, stateChanged);
+    }
 
-    public ReaderWorker(SelectionKey key, Map<String, User> users, Map<Integer, Post> posts, Map<String, Socket> loggedUsers, CallbackHandler callbackHandler, Set<Registrable> readyToBeRegistered, Selector selector, AtomicBoolean stateChanged) {
+    private ReaderWorker(SelectionKey key, SocketChannel client, ClientConnection connection, byte []request, Map<String, User> users, Map<Integer, Post> posts, SessionReaper sessionReaper, CallbackHandler callbackHandler, ExchangeRateProvider exchangeRateProvider, FeedCache feedCache, Queue<Registrable> readyToBeRegistered, Selector selector, AtomicBoolean stateChanged) {
         this.key = key;
+        this.client = client;
+        this.connection = connection;
+        this.request = request;
         this.users = users;
         this.posts = posts;
-        this.loggedUsers = loggedUsers;
+        this.sessionReaper = sessionReaper;
         this.callbackHandler = callbackHandler;
+        this.exchangeRateProvider = exchangeRateProvider;
+        this.feedCache = feedCache;
         this.readyToBeRegistered = readyToBeRegistered;
         this.selector = selector;
         this.stateChanged = stateChanged;
+    }
 
-        this.client = (SocketChannel) key.channel();
-        this.byteBuffer = (ByteBuffer) key.attachment();
+    /**
+     * Classifies a request without decoding it. The heavy requests scan many users or posts,
+     * so they are served by a different threadpool
+     * @param request bytes of the request
+     * @param binaryProtocol true if the request was sent with the binary protocol
+     * @return true if the request can take long to be served
+     */
+    public static boolean isHeavyRequest(byte []request, boolean binaryProtocol) {
+        byte opcode = binaryProtocol ? BinaryRequest.readOpcode(request) : TextRequest.readOpcode(request);
+
+        return switch (opcode) {
+            case BinaryRequest.LIST_USERS, BinaryRequest.LIST_FOLLOWING, BinaryRequest.BLOG,
+                    BinaryRequest.SHOW_FEED, BinaryRequest.BATCH -> true;
+            default -> false;
+        };
     }
 
     public void run() {
-        //Reads the request from client
-        String request = readRequest();
-        if (request == null) return;
-
-        //Gets the request arguments
-        String[] args = request.split(" ");
-
-        switch (args[0]) {
-            case "login" -> {
-                if (args.length != 3) { //Checks the correctness of the request
-                    setResponse(-1);
-                    break;
-                }
-
-                login(args[1], args[2]);
-            }
-
-            case "logout" -> {
-                if (args.length != 2) { //Checks the correctness of the request
-                    setResponse(-1);
-                    break;
-                }
+        serve();
+        //Queues the response, the reactor writes it when the channel is writable
+        connection.queueResponse();
 
-                logout(args[1]);
-            }
-
-            case "list" -> {
-                if (args.length != 3) { //Checks the correctness of the request
-                    setResponse(-1);
-                    break;
-                }
-
-                if (args[1].equals("users")) {
-                    listUsers(args[2]);
-                    break;
-                }
-
-                if (args[1].equals("following")) {
-                    listFollowing(args[2]);
-                    break;
-                }
-
-                setResponse(-1); //Invalid request
-            }
-
-            case "post" -> {
-                String []postArgs = request.split("/");
-                if (postArgs.length != 4) {
-                    setResponse(-1);
-                    break;
-                }
-
-                createPost(postArgs[3], postArgs[1], postArgs[2]);
-            }
-
-            case "delete" -> {
-                if (args.length != 3) { //Checks the correctness of the request
-                    setResponse(-1);
-                    break;
-                }
-
-                try {
-                    deletePost(args[2], Integer.parseInt(args[1]));
-                } catch (NumberFormatException e) { setResponse(-1); }
-            }
-
-            case "follow" -> {
-                if (args.length != 3) { //Checks the correctness of the request
-                    setResponse(-1);
-                    break;
-                }
-
-                followUser(args[2], args[1]);
-            }
-
-            case "unfollow" -> {
-                if (args.length != 3) { //Checks the correctness of the request
-                    setResponse(-1);
-                    break;
-                }
-
-                unfollowUser(args[2], args[1]);
-            }
-
-            case "rate" -> {
-                if (args.length != 4) { //Checks the correctness of the request
-                    setResponse(-1);
-                    break;
-                }
-
-                try {
-                    ratePost(args[3], Integer.parseInt(args[1]), args[2]);
-                } catch (NumberFormatException e) { setResponse(-1); }
-            }
-
-            case "blog" -> {
-                if (args.length != 2) { //Checks the correctness of the request
-                    setResponse(-1);
-                    break;
-                }
-
-                viewBlog(args[1]);
-            }
+        //Marks the client as ready
+        readyToBeRegistered.add(new Registrable(key, Registrable.RESPONSE_READY));
+        //Wakes up the selector to update the interest set of the key
+        selector.wakeup();
+    }
 
-            case "show" -> {
-                if (args[1].equals("post") && args.length == 4) {
-                    try {
-                        showPost(Integer.parseInt(args[2]), args[3]);
-                    } catch (NumberFormatException e) { setResponse(-1); }
-                    break;
-                }
+    /**
+     * Serves the request and attaches the response to the connection of the client
+     */
+    public void serve() {
+        //The requests keep the session of the user alive
+        Session session = connection.getSession();
+        if (session != null) session.touch();
 
-                if (args[1].equals("feed") && args.length == 3) {
-                    showFeed(args[2]);
-                    break;
-                }
+        try {
+            serveRequest();
+        } catch (IOException e) {
+            System.err.println("Error while writing the response: " + e.getMessage());
 
-                setResponse(-1); //Invalid request
-            }
+            //Discards the json response written until now
+            if (responseBody != null) responseBody.release();
+            responseBody = null;
+            setResponse(-1);
+        }
 
-            case "rewin" -> {
-                if (args.length != 3) { //Checks the correctness of the request
-                    setResponse(-1);
-                    break;
-                }
+        //Attaches the response to the connection of the client
+        connection.setResponse(requestId, responseCode, responseBody);
+    }
 
-                try {
-                    rewinPost(Integer.parseInt(args[1]), args[2]);
-                } catch (NumberFormatException e) { setResponse(-1); }
+    /**
+     * Elaborates the request and prepares the response
+     * @throws IOException if some error occurs while writing the json response
+     */
+    private void serveRequest() throws IOException {
+        DecodedRequest decodedRequest;
+        if (connection.isBinaryProtocol()) {
+            BinaryRequest binaryRequest = new BinaryRequest(request);
+            //The response will carry the identifier of the request
+            requestId = binaryRequest.getRequestId();
+            decodedRequest = binaryRequest;
+        } else {
+            if (Arrays.equals(request, NEGOTIATION_REQUEST)) {
+                //The next requests will be sent with the binary protocol
+                connection.setBinaryProtocol();
+                setResponse(0);
+                return;
             }
 
-            case "comment" -> {
-                String []commentArgs = request.split("/");
-                if (commentArgs.length != 4) {
-                    setResponse(-1);
-                    break;
-                }
-
-                String comment = commentArgs[2];
-                String username = commentArgs[3];
-
-                if (comment.equals("") || username.equals("")) { //Checks the correctness of the request
-                    setResponse(-1);
-                    break;
-                }
-
-                try {
-                    addComment(Integer.parseInt(commentArgs[1]), comment, username);
-                } catch (NumberFormatException e) { setResponse(-1); }
-            }
+            decodedRequest = new TextRequest(request);
+        }
 
-            case "wallet" -> {
-                if (args.length == 2) {
-                    getWallet(args[1]);
-                    break;
-                }
+        if (decodedRequest.getOpcode() == BinaryRequest.BATCH && !decodedRequest.isMalformed()) {
+            serveBatch(decodedRequest);
+            return;
+        }
 
-                if (args.length == 3) {
-                    getWalletBTC(args[2]);
-                    break;
-                }
+        dispatch(decodedRequest);
+    }
 
-                setResponse(-1); //Invalid request
-            }
+    /**
+     * Elaborates the sub-requests of a batch request
+     * @param batchRequest batch request
+     * @throws IOException if some error occurs while writing the json response
+     */
+    private void serveBatch(DecodedRequest batchRequest) throws IOException {
+        int []responseCodes = new int[batchRequest.getFieldCount()];
 
-            case "getFollowers" -> {
-                if (args.length != 2) { //Checks the correctness of the request
-                    setResponse(-1);
-                    break;
-                }
+        for (int i = 0; i < responseCodes.length; i++) {
+            DecodedRequest subRequest = batchRequest.getSubRequest(i);
 
-                sendFollowers(args[1]);
+            if (subRequest.isMalformed() || !isBatchCommand(subRequest.getOpcode())) { //Invalid sub-request
+                responseCodes[i] = -1;
+                continue;
             }
 
-            default -> setResponse(-2); //Invalid request
+            //Reuses the handlers of the single requests
+            dispatch(subRequest);
+            responseCodes[i] = responseCode;
         }
 
-        //Marks the client as ready
-        readyToBeRegistered.add(new Registrable(client, SelectionKey.OP_WRITE, byteBuffer, jsonElement));
-        //Wakes up the selector to re-register the key
-        selector.wakeup();
+        batchResponse(responseCodes);
     }
 
     /**
-     * Reads bytes from channel and writes it to the buffer
-     * @return the number of bytes read
-     * @throws IOException if some IO error occurs
+     * @param opcode opcode of the request
+     * @return true if the request is allowed in a batch request, they answer only with a response code
      */
-    private int readFromChannelToBuffer() throws IOException{
-        //Prepares for writing to the buffer
-        byteBuffer.clear();
-        //Writes to the buffer
-        int byteRead = client.read(byteBuffer);
-        //Prepares the buffer to be read
-        byteBuffer.flip();
-
-        return byteRead;
+    private boolean isBatchCommand(byte opcode) {
+        return switch (opcode) {
+            case BinaryRequest.POST, BinaryRequest.DELETE, BinaryRequest.FOLLOW, BinaryRequest.UNFOLLOW,
+                    BinaryRequest.RATE, BinaryRequest.REWIN, BinaryRequest.COMMENT -> true;
+            default -> false;
+        };
     }
 
     /**
-     * Reads a request from the SocketChannel
-     * @return the request string or null if some error occur
+     * Calls the handler of a decoded request
+     * @param decodedRequest decoded request
+     * @throws IOException if some error occurs while writing the json response
      */
-    private String readRequest() {
-        try {
-            //Reads bytes from the channel
-            int byteRead = readFromChannelToBuffer();
-
-            //Checks if the client sent the termination signal
-            if (byteRead == -1) throw new IOException("Client disconnected");
-
-            //Reads the request len
-            int requestLen = byteBuffer.getInt();
-            int totalRead = 0; //Bytes read
-            StringBuilder request = new StringBuilder();
-
-            //Reads all the request bytes
-            while (totalRead < requestLen) {
-                //Initializes the byte array to read the bytes
-                byte[] requestByte = new byte[byteBuffer.limit() - byteBuffer.position()];
-                //Puts all the bytes in the buffer
-                byteBuffer.get(requestByte);
-                //Adds the current bytes read to the request
-                request.append(new String(requestByte));
-
-                //Updates the bytes read
-                totalRead += requestByte.length;
-
-                //Checks if read all the request
-                if (totalRead == requestLen) break;
-
-                //Reads bytes from the channel
-                byteRead = readFromChannelToBuffer();
-                if (byteRead == -1) throw new IOException("Client disconnected");
-            }
+    private void dispatch(DecodedRequest decodedRequest) throws IOException {
+        if (decodedRequest.isMalformed()) { //Malformed request
+            setResponse(-1);
+            return;
+        }
 
-            return request.toString();
+        //The old text clients send the username after the fields, it must be the one logged in on the connection
+        Session session = connection.getSession();
+        if (session != null && decodedRequest instanceof TextRequest textRequest) textRequest.matchUsername(session.getUsername());
+        legacyRequest = decodedRequest instanceof TextRequest textRequest && textRequest.getUsername() != null;
+        if (legacyRequest && session != null && !((TextRequest) decodedRequest).getUsername().equals(session.getUsername())) {
+            setResponse(-1);
+            return;
+        }
 
-        } catch (IOException e) {
-            try {client.close();} catch (Exception ignored) {}
+        byte opcode = decodedRequest.getOpcode();
+        if (opcode <= 0 || opcode >= HANDLERS.length || HANDLERS[opcode] == null) { //Invalid request
+            setResponse(-2);
+            return;
         }
 
-        return null;
+        HANDLERS[opcode].handle(this, decodedRequest);
     }
 
     /**
-     * Sets the response code on the buffer
+     * Sends to the client the response codes of the sub-requests of a batch request
+     * @param responseCodes response codes of the sub-requests, in the same order of the sub-requests
+     * @throws IOException if some error occurs while writing the json response
+     */
+    private void batchResponse(int []responseCodes) throws IOException {
+        JsonWriter writer = jsonResponse();
+        writer.beginArray();
+        for (int code : responseCodes)
+            writer.value(code);
+        writer.endArray();
+
+        setResponse(0);
+    }
+
+    /**
+     * Sets the response code
      * @param code Response code
      */
     private void setResponse(int code) {
-        byteBuffer.clear(); //Prepares the buffer to be written
-        byteBuffer.putInt(code); //Writes the response code
+        responseCode = code;
+    }
+
+    /**
+     * Initializes the json response, that is encoded directly in pooled buffers
+     * @return writer used to write the json response
+     */
+    private JsonWriter jsonResponse() {
+        responseBody = new ResponseWriter(connection.getBufferPool());
+        return new JsonWriter(responseBody);
     }
 
     /**
@@ -311,24 +295,29 @@ public class ReaderWorker implements Runnable {
      * @param username the username of the user to log in
      * @param password the password of the user to log in
      */
-    private void login(String username, String password) {
+    private void login(String username, String password) throws IOException {
         try {
             //Gets the user with the specified username
             User user = users.get(username);
 
             if (user != null) {
                 if (user.comparePassword(Hash.bytesToHex(Hash.sha256(username + password)))) { //The password is correct
-                    synchronized (loggedUsers) {
-                        if (loggedUsers.containsKey(username)) { //Checks if the user is already logged in
-                            setResponse(2);
-                            return;
-                        }
-
-                        loggedUsers.put(username, client.socket()); //Saves that the user is logged in
+                    //Checks if a user is already logged in on this connection or if the user is already logged in
+                    Session session = new Session(user, client, connection, sessionReaper);
+                    if (connection.getSession() != null || !session.open()) {
+                        setResponse(2);
+                        return;
                     }
 
+                    //Binds the session to the connection, the next requests are made by this user
+                    connection.setSession(session);
+
                     //Sets the references for the multicast group to send to the client
-                    jsonElement = JsonParser.parseString("{\"multicastIP\": \"" + ServerMain.multicastIP + "\", \"multicastPort\": " + ServerMain.multicastPort + "}");
+                    JsonWriter writer = jsonResponse();
+                    writer.beginObject();
+                    writer.name("multicastIP").value(ServerMain.multicastIP);
+                    writer.name("multicastPort").value(ServerMain.multicastPort);
+                    writer.endObject();
                     setResponse(0);
                 } else //The password isn't correct
                     setResponse(1);
@@ -342,63 +331,112 @@ public class ReaderWorker implements Runnable {
     }
 
     /**
-     * Logouts a user from the social network
-     * @param username the username of the user to logout
+     * Logouts the user logged in on this connection from the social network
      */
-    private void logout(String username) {
-        if (loggedUsers.remove(username) != null) //User removed correctly
-            setResponse(0);
-        else //User wasn't logged in
+    private void logout() {
+        Session session = connection.getSession();
+        if (session == null) { //User wasn't logged in
             setResponse(1);
+            return;
+        }
+
+        //Unbinds the session from the connection
+        session.close();
+        connection.setSession(null);
+        setResponse(0);
     }
 
     /**
-     * Sends a json array to the client that contains all the users who have at least one tag in common with him
-     * @param username the username of the user that made the request
+     * Sends a json array to the client that contains the users who have at least one tag in common with him,
+     * ranked by the number of tags in common. The users are read from the posting lists of his tags
+     * @param limit maximum number of users to send, all of them if it's not positive
      */
-    private void listUsers(String username) {
-        if (!loggedUsers.containsKey(username)) { //Checks if the user is logged in
+    private void listUsers(int limit) throws IOException {
+        Session session = connection.getSession();
+        if (session == null) { //Checks if the user is logged in
             setResponse(1);
             return;
         }
 
-        Gson gson = new Gson();
-        JsonArray jsonResponse = new JsonArray();
-
         //Gets the user information
-        User user = users.get(username);
+        User user = session.getUser();
+
+        //Reads the posting list of each tag of the user
+        int []tagIds = user.getTagIds();
+        int [][]postings = new int[tagIds.length][];
+        int total = 0;
+        for (int i = 0; i < tagIds.length; i++) {
+            postings[i] = TagIndex.getUsers(tagIds[i]);
+            total += postings[i].length;
+        }
 
-        //Populates the JsonArray with the users who have at least one tag in common
-        for (User u : users.values()) {
-            if (user != u) { //Checks if the user u is not who made the request
-                //Gets the common tags
-                String []commonTags = user.getCommonTags(u);
+        //Merges the posting lists, a user with more tags in common appears more times
+        int []candidates = new int[total];
+        int candidateCount = 0;
+        for (int i = 0; i < tagIds.length; i++) {
+            for (int id : postings[i])
+                if (id != user.getId()) candidates[candidateCount++] = id;
+        }
+        Arrays.sort(candidates, 0, candidateCount);
 
-                //If there aren't common tags, skip this user u
-                if (commonTags.length == 0) continue;
+        //Ranks each candidate once. The number of tags missing is in the high bits,
+        //so sorting ranks the users by the number of tags in common, then by id
+        long []ranked = new long[candidateCount];
+        int found = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            if (i > 0 && candidates[i] == candidates[i - 1]) continue;
 
-                //Creates and add the JsonElement to the JsonArray
-                jsonResponse.add(JsonParser.parseString("{\"username\": \"" + u.getUsername() + "\", \"tags\": " + gson.toJson(commonTags) + "}"));
-            }
+            User candidate = users.get(UserRegistry.getUsername(candidates[i]));
+            ranked[found++] = ((long) (MAX_TAGS - user.countCommonTags(candidate)) << 32) | candidates[i];
         }
+        Arrays.sort(ranked, 0, found);
+        if (limit > 0) found = Math.min(found, limit);
+
+        JsonWriter writer = jsonResponse();
+        writer.beginArray();
+
+        //Writes the users who have at least one tag in common, with the common tags
+        for (int i = 0; i < found; i++) {
+            User candidate = users.get(UserRegistry.getUsername((int) ranked[i]));
+            userToJson(writer, candidate.getUsername(), user.getCommonTags(candidate));
+        }
+        writer.endArray();
 
         //Sets the response
         setResponse(0);
-        jsonElement = jsonResponse;
+    }
+
+    /**
+     * Writes a user and the tags in common in json format
+     * @param writer writer used to write the json response
+     * @param username username of the user
+     * @param tags tags in common
+     */
+    private void userToJson(JsonWriter writer, String username, String []tags) throws IOException {
+        writer.beginObject();
+        writer.name("username").value(username);
+        writer.name("tags");
+        writer.beginArray();
+        for (String tag : tags)
+            writer.value(tag);
+        writer.endArray();
+        writer.endObject();
     }
 
     /**
      * Adds userToFollow to the followed list of the user with "username" username
      * and adds "username" to the userToFollow follower list
-     * @param username username of the user who made the request
      * @param userToFollow username of the user to follow
      */
-    private void followUser(String username, String userToFollow) {
-        if (!loggedUsers.containsKey(username)) { //Checks if the user is logged in
+    private void followUser(String userToFollow) {
+        Session session = connection.getSession();
+        if (session == null) { //Checks if the user is logged in
             setResponse(1);
             return;
         }
 
+        String username = session.getUsername();
+
         //Checks if the user is trying to follow himself
         if (username.equals(userToFollow)) {
             setResponse(2);
@@ -413,35 +451,35 @@ public class ReaderWorker implements Runnable {
         }
 
         //Gets the information about the user who made the request
-        User user = users.get(username);
-        try {
-            //Performs the actions for following a user
-            if (user.addFollowed(userToFollow) && userToFollowObj.addFollower(username)) {
-                stateChanged.set(true); //State of the server has changed
-                setResponse(0);
+        User user = session.getUser();
+        //Performs the actions for following a user
+        if (user.addFollowed(userToFollowObj.getId()) && userToFollowObj.addFollower(user.getId())) {
+            //Adds the posts of the user followed to the timeline
+            feedCache.followed(user, userToFollowObj);
 
-                //Notifies the user followed that has a new follower
-                callbackHandler.notifyNewFollower(userToFollow, username);
-            } else //User already followed that user
-                setResponse(4);
-        } catch (RemoteException e) {
-            System.err.println("Error while notifying the new follower: " + e.getMessage());
-            try {client.close();} catch (Exception ignored) {}
-        }
+            stateChanged.set(true); //State of the server has changed
+            setResponse(0);
+
+            //Notifies the user followed that has a new follower, without waiting for the client
+            callbackHandler.notifyNewFollower(userToFollow, username);
+        } else //User already followed that user
+            setResponse(4);
     }
 
     /**
      * Removes userToFollow to the followed list of the user with "username" username
      * and removes "username" to the userToFollow follower list
-     * @param username username of the user who made the request
      * @param userToUnfollow username of the user to unfollow
      */
-    private void unfollowUser(String username, String userToUnfollow) {
-        if (!loggedUsers.containsKey(username)) { //Checks if the user is logged in
+    private void unfollowUser(String userToUnfollow) {
+        Session session = connection.getSession();
+        if (session == null) { //Checks if the user is logged in
             setResponse(1);
             return;
         }
 
+        String username = session.getUsername();
+
         //Checks if the user is trying to follow himself
         if (username.equals(userToUnfollow)) {
             setResponse(2);
@@ -456,37 +494,37 @@ public class ReaderWorker implements Runnable {
         }
 
         //Gets the information about the user who made the request
-        User user = users.get(username);
-        try {
-            //Performs the actions for unfollowing a user
-            if (user.removeFollowed(userToUnfollow) && userToUnfollowObj.removeFollower(username)) {
-                stateChanged.set(true); //State of the server has changed
-                setResponse(0);
+        User user = session.getUser();
+        //Performs the actions for unfollowing a user
+        if (user.removeFollowed(userToUnfollowObj.getId()) && userToUnfollowObj.removeFollower(user.getId())) {
+            //Removes the posts of the user unfollowed from the timeline
+            feedCache.unfollowed(user, userToUnfollowObj);
 
-                //Notifies the user unfollowed that he has lost a follower
-                callbackHandler.notifyLostFollower(userToUnfollow, username);
-            } else //User wasn't following that user
-                setResponse(4);
-        } catch (RemoteException e) {
-            System.err.println("Error while notifying the unfollow: " + e.getMessage());
-            try {client.close();} catch (Exception ignored) {}
-        }
+            stateChanged.set(true); //State of the server has changed
+            setResponse(0);
+
+            //Notifies the user unfollowed that he has lost a follower, without waiting for the client
+            callbackHandler.notifyLostFollower(userToUnfollow, username);
+        } else //User wasn't following that user
+            setResponse(4);
     }
 
     /**
      * Add an upvote or downvote to a post
-     * @param username the username of the user who made the request
      * @param idPost the id of the post to rate
-     * @param vote +1 is an upvote, -1 is a downvote
+     * @param vote 1 is an upvote, -1 is a downvote
      */
-    private void ratePost(String username, int idPost, String vote) {
-        if (!loggedUsers.containsKey(username)) { //Checks if the user is logged in
+    private void ratePost(int idPost, int vote) {
+        Session session = connection.getSession();
+        if (session == null) { //Checks if the user is logged in
             setResponse(1);
             return;
         }
 
+        int userId = session.getUser().getId();
+
         //Checks if the vote isn't allowed
-        if (!vote.equals("+1") && !vote.equals("-1")) {
+        if (vote != 1 && vote != -1) {
             setResponse(2);
             return;
         }
@@ -499,19 +537,19 @@ public class ReaderWorker implements Runnable {
             return;
         }
 
-        if (post.getAuthor().equals(username)) { //The user is the author of the post
+        if (post.getAuthor() == userId) { //The user is the author of the post
             setResponse(4);
             return;
         }
 
-        if (post.containsUpvote(username) || post.containsDownvote(username)) { //The user already rated the post
+        if (post.containsUpvote(userId) || post.containsDownvote(userId)) { //The user already rated the post
             setResponse(5);
             return;
         }
 
         //Adds the vote
-        if (vote.equals("+1")) post.addUpvote(username);
-        if (vote.equals("-1")) post.addDownvote(username);
+        if (vote == 1) post.addUpvote(userId);
+        if (vote == -1) post.addDownvote(userId);
 
         stateChanged.set(true); //States of the server has changed
         setResponse(0);
@@ -519,12 +557,12 @@ public class ReaderWorker implements Runnable {
 
     /**
      * Creates a new post
-     * @param username the username of the user who made the request
      * @param title title of the new post
      * @param content content of the new post
      */
-    private void createPost(String username, String title, String content) {
-        if (!loggedUsers.containsKey(username)) { //Checks if the user is logged in
+    private void createPost(String title, String content) {
+        Session session = connection.getSession();
+        if (session == null) { //Checks if the user is logged in
             setResponse(1);
             return;
         }
@@ -535,31 +573,37 @@ public class ReaderWorker implements Runnable {
             return;
         }
 
+        //Gets the information of the user
+        User user = session.getUser();
         //Creates a new post
-        Post newPost = new Post(username, title, content);
+        Post newPost = new Post(user.getId(), title, content);
 
-        synchronized (users) {
-            synchronized (posts) {
+        int []userStripes = USER_LOCKS.lock(user.getId());
+        int []postStripes = POST_LOCKS.lock(newPost.getIdPost());
+        try {
             //Adds the post to the server state
             posts.put(newPost.getIdPost(), newPost);
-            //Gets the information of the user
-            User user = users.get(username);
             //Adds the post in the user post list
             user.addPost(newPost.getIdPost());
-            }
+        } finally {
+            POST_LOCKS.unlock(postStripes);
+            USER_LOCKS.unlock(userStripes);
         }
 
+        //Adds the post to the timelines of the followers
+        feedCache.postAdded(user, newPost.getIdPost());
+
         stateChanged.set(true); //States of the server has changed
         setResponse(0);
     }
 
     /**
      * Deletes the specified post
-     * @param username username of the user who made the request
      * @param idPost id of the post to delete
      */
-    private void deletePost(String username, int idPost) {
-        if (!loggedUsers.containsKey(username)) { //Checks if the user is logged in
+    private void deletePost(int idPost) {
+        Session session = connection.getSession();
+        if (session == null) { //Checks if the user is logged in
             setResponse(1);
             return;
         }
@@ -573,18 +617,24 @@ public class ReaderWorker implements Runnable {
         }
 
         //Gets the information of the user
-        User user = users.get(username);
+        User user = session.getUser();
 
         //Checks if the user is a rewinner
-        if (post.getRewinner().contains(username)) {
-            synchronized (users) {
-                synchronized (posts) {
-                    //Removes the username from the rewinner list
-                    post.removeRewinner(username);
-                    //Removes the post from the blog of the user
-                    user.removePost(post.getIdPost());
-                }
+        if (post.isRewinner(user.getId())) {
+            int []userStripes = USER_LOCKS.lock(user.getId());
+            int []postStripes = POST_LOCKS.lock(idPost);
+            try {
+                //Removes the user from the rewinner list
+                post.removeRewinner(user.getId());
+                //Removes the post from the blog of the user
+                user.removePost(post.getIdPost());
+            } finally {
+                POST_LOCKS.unlock(postStripes);
+                USER_LOCKS.unlock(userStripes);
             }
+            //Removes the rewin from the timelines of the followers
+            feedCache.postRemoved(user, idPost);
+
             stateChanged.set(true); //Server state changed
             setResponse(0);
             return;
@@ -595,92 +645,145 @@ public class ReaderWorker implements Runnable {
             return;
         }
 
-        synchronized (users) {
-            synchronized (posts) {
-                //Removes the post from the state of the server
-                posts.remove(idPost);
-                //Removes the post from the post list of the user
-                user.removePost(idPost);
+        //Locks the author and the rewinners. A rewin can complete before the locks are taken,
+        //so the locks are taken again if a rewinner isn't covered by them
+        int []userStripes;
+        int []postStripes;
+        while (true) {
+            int []rewinners = post.getRewinner();
+            int []lockedUsers = Arrays.copyOf(rewinners, rewinners.length + 1);
+            lockedUsers[rewinners.length] = user.getId();
+
+            userStripes = USER_LOCKS.lock(lockedUsers);
+            postStripes = POST_LOCKS.lock(idPost);
+            //No one can rewin the post while its stripe is locked
+            if (coversRewinners(post, userStripes)) break;
+
+            POST_LOCKS.unlock(postStripes);
+            USER_LOCKS.unlock(userStripes);
+        }
 
-                //Removes the post from the post list of all the user who
-                //rewinned the post
-                for (String rewinner : post.getRewinner()) {
-                    User rewinnerUser = users.get(rewinner);
-                    rewinnerUser.removePost(idPost);
-                }
+        try {
+            //Removes the post from the state of the server
+            posts.remove(idPost);
+            //Removes the post from the post list of the user
+            user.removePost(idPost);
+
+            //Removes the post from the post list of all the user who
+            //rewinned the post
+            for (int rewinner : post.getRewinner()) {
+                User rewinnerUser = users.get(UserRegistry.getUsername(rewinner));
+                rewinnerUser.removePost(idPost);
             }
+        } finally {
+            POST_LOCKS.unlock(postStripes);
+            USER_LOCKS.unlock(userStripes);
         }
 
+        //Removes the post from the timelines of the followers of the author and of the rewinners
+        feedCache.postRemoved(user, idPost);
+        for (int rewinner : post.getRewinner())
+            feedCache.postRemoved(users.get(UserRegistry.getUsername(rewinner)), idPost);
+
         stateChanged.set(true); //States of the server has changed
         setResponse(0);
     }
 
+    /**
+     * @param post post to check
+     * @param userStripes stripes of the users locked
+     * @return true iff the stripes of all the rewinners of the post are locked, false otherwise
+     */
+    private static boolean coversRewinners(Post post, int []userStripes) {
+        for (int rewinner : post.getRewinner())
+            if (!USER_LOCKS.covers(rewinner, userStripes)) return false;
+
+        return true;
+    }
+
     /**
      * Sends to the client the list of the user who is followed by "username"
-     * @param username the username of the user who made the request
      */
-    private void listFollowing(String username) {
-        if (!loggedUsers.containsKey(username)) { //Checks if the user is logged in
+    private void listFollowing() throws IOException {
+        Session session = connection.getSession();
+        if (session == null) { //Checks if the user is logged in
             setResponse(1);
             return;
         }
 
         //Gets the information of the user
-        User user = users.get(username);
+        User user = session.getUser();
         //Initializes the json array who will be sent to the client
-        JsonArray jsonResponse = new JsonArray();
-        Gson gson = new Gson();
+        JsonWriter writer = jsonResponse();
+        writer.beginArray();
 
-        //Adds every user who is followed by "username" to the json array
-        for (String u : user.getFollowing()) {
-            jsonResponse.add(
-                    //Parses the string to a JsonElement
-                    JsonParser.parseString("{\"username\": \"" + u + "\", \"tags\": " + gson.toJson(user.getCommonTags(users.get(u))) + "}")
-            );
+        //Writes every user who is followed by "username" to the json array
+        for (int u : user.getFollowed()) {
+            User followed = users.get(UserRegistry.getUsername(u));
+            userToJson(writer, followed.getUsername(), user.getCommonTags(followed));
         }
 
+        writer.endArray();
+
         //Sets the response
         setResponse(0);
-        jsonElement = jsonResponse;
     }
 
     /**
-     * Sends to the client the posts that the user has created
-     * @param username username of the user who made the request
+     * Sends to the client a page of the posts that the user has created, from the newest
+     * @param limit maximum number of posts of the page, the default one if it's not positive
+     * @param beforeId id of the post from which the page starts, excluded. If it's negative the page starts from the newest post
      */
-    private void viewBlog(String username) {
-        if (!loggedUsers.containsKey(username)) { //Checks if the user is logged in
+    private void viewBlog(int limit, int beforeId) throws IOException {
+        Session session = connection.getSession();
+        if (session == null) { //Checks if the user is logged in
             setResponse(1);
             return;
         }
 
-        //Gets the information of the user
-        User user = users.get(username);
-        //Initializes the json array who will be sent to the client
-        JsonArray jsonResponse = new JsonArray();
+        limit = pageSize(limit);
+        if (beforeId < 0) beforeId = Integer.MAX_VALUE;
 
-        //Adds every post created by user to the json array
-        for (int postId : user.getBlog()) {
-            //Gets the information of the post
+        //Gets the information of the user
+        User user = session.getUser();
+        //Initializes the json object who will be sent to the client
+        JsonWriter writer = jsonResponse();
+        beginPage(writer);
+
+        //Writes the posts created by user to the json array, until the page is full
+        int written = 0;
+        int lastId = -1;
+        int cursor = -1; //Stays -1 if there isn't a next page
+        for (int postId : user.getBlogBefore(beforeId)) {
+            //Gets the information of the post, it could be deleted meanwhile
             Post post = posts.get(postId);
 
-            //Adds only the post that the user created and discards the rewinned post
-            if (post.getAuthor().equals(username))
-                jsonResponse.add(JsonParser.parseString(post.basicInfoToJson(username)));
+            //Writes only the post that the user created and discards the rewinned post
+            if (post == null || post.getAuthor() != user.getId()) continue;
+
+            if (written == limit) {
+                //There is another post, so the next page starts after the last one written
+                cursor = lastId;
+                break;
+            }
+
+            post.basicInfoToJson(writer, user.getId());
+            written++;
+            lastId = postId;
         }
+        endPage(writer, cursor);
 
         //Sets the response
         setResponse(0);
-        jsonElement = jsonResponse;
     }
 
     /**
      * Sends to the client the post information
      * @param idPost id of the post to send to the client
-     * @param username username of the user who made the request
      */
-    private void showPost(int idPost, String username) {
-        if (!loggedUsers.containsKey(username)) { //Checks if the user is logged in
+    private void showPost(int idPost) throws IOException {
+        Session session = connection.getSession();
+        if (session == null) { //Checks if the user is logged in
             setResponse(1);
             return;
         }
@@ -694,51 +797,85 @@ public class ReaderWorker implements Runnable {
         }
 
         //Sets the response
+        post.toJson(jsonResponse());
         setResponse(0);
-        jsonElement = JsonParser.parseString(post.toJson());
     }
 
     /**
-     * Sends to the client the feed of the user
-     * @param username username of the user who made the request
+     * Sends to the client a page of the feed of the user, from the newest post
+     * @param limit maximum number of posts of the page, the default one if it's not positive
+     * @param beforeId id of the post from which the page starts, excluded. If it's negative the page starts from the newest post
      */
-    private void showFeed(String username) {
-        if (!loggedUsers.containsKey(username)) { //Checks if the user is logged in
+    private void showFeed(int limit, int beforeId) throws IOException {
+        Session session = connection.getSession();
+        if (session == null) { //Checks if the user is logged in
             setResponse(1);
             return;
         }
 
+        limit = pageSize(limit);
+        if (beforeId < 0) beforeId = Integer.MAX_VALUE;
+
         //Gets the information of the user
-        User user = users.get(username);
-        //Initializes the json array who will be sent to the client
-        JsonArray jsonResponse = new JsonArray();
-
-        //Adds every post of the users followed by "username"
-        for (String usernameFollowed : user.getFollowed()) {
-            //Gets information about the user
-            User userFollowed = users.get(usernameFollowed);
-
-            //Adds every post who's made by that user to the json array
-            //even the rewinned one
-            for (int postId : userFollowed.getBlog()) {
-                //Gets information about the post
-                Post post = posts.get(postId);
-                jsonResponse.add(JsonParser.parseString(post.basicInfoToJson(usernameFollowed)));
-            }
+        User user = session.getUser();
+        FeedCache.Page page = feedCache.getFeed(user, limit, beforeId);
+        //Initializes the json object who will be sent to the client
+        JsonWriter writer = jsonResponse();
+        beginPage(writer);
+
+        //Writes every post of the page, with the user followed who created or rewinned it
+        for (long entry : page.getEntries()) {
+            //Gets information about the post, it could be deleted meanwhile
+            Post post = posts.get(Timeline.getIdPost(entry));
+            if (post != null) post.basicInfoToJson(writer, Timeline.getVia(entry));
         }
+        endPage(writer, page.getCursor());
 
         //Sets the response
         setResponse(0);
-        jsonElement = jsonResponse;
+    }
+
+    /**
+     * Starts a page of posts: an object with the array of the posts and the cursor of the next page.
+     * The clients that predate the pages get only the array
+     * @param writer writer of the json response
+     * @throws IOException if some error occurs while writing the json response
+     */
+    private void beginPage(JsonWriter writer) throws IOException {
+        if (!legacyRequest) writer.beginObject().name("posts");
+        writer.beginArray();
+    }
+
+    /**
+     * Ends a page of posts started by beginPage
+     * @param writer writer of the json response
+     * @param cursor id of the post from which the next page starts, -1 if there isn't a next page
+     * @throws IOException if some error occurs while writing the json response
+     */
+    private void endPage(JsonWriter writer, int cursor) throws IOException {
+        writer.endArray();
+        if (!legacyRequest) writer.name("cursor").value(cursor).endObject();
+    }
+
+    /**
+     * @param limit number of posts requested by the client
+     * @return the number of posts of the page
+     */
+    private int pageSize(int limit) {
+        //The clients that predate the pages can't ask for the next one, so they get all the posts
+        if (legacyRequest) return Integer.MAX_VALUE;
+        if (limit <= 0) return DEFAULT_PAGE_SIZE;
+
+        return Math.min(limit, MAX_PAGE_SIZE);
     }
 
     /**
      * Adds a post of another user to the post list of "username"
      * @param idPost id of the post to rewin
-     * @param username username of the user who made the request
      */
-    private void rewinPost(int idPost, String username) {
-        if (!loggedUsers.containsKey(username)) { //Checks if the user is logged in
+    private void rewinPost(int idPost) {
+        Session session = connection.getSession();
+        if (session == null) { //Checks if the user is logged in
             setResponse(1);
             return;
         }
@@ -752,29 +889,43 @@ public class ReaderWorker implements Runnable {
         }
 
         //Gets the information about the user
-        User user = users.get(username);
-
-        synchronized (users) {
-            synchronized (posts) {
-                if (user.addPost(post.getIdPost())) { //Adds the post to the user post list
-                    post.addRewinner(username); //Adds the user to the rewinner list
+        User user = session.getUser();
 
-                    stateChanged.set(true); //State of the server changed
-                    setResponse(0);
-                } else //Post already rewinned
-                    setResponse(3);
+        boolean rewinned;
+        int []userStripes = USER_LOCKS.lock(user.getId());
+        int []postStripes = POST_LOCKS.lock(idPost);
+        try {
+            //The post could be deleted meanwhile: its rewinners are removed while its stripe is locked
+            if (!posts.containsKey(idPost)) {
+                setResponse(2);
+                return;
             }
+
+            rewinned = user.addPost(post.getIdPost()); //Adds the post to the user post list
+            if (rewinned) post.addRewinner(user.getId()); //Adds the user to the rewinner list
+        } finally {
+            POST_LOCKS.unlock(postStripes);
+            USER_LOCKS.unlock(userStripes);
         }
+
+        if (rewinned) {
+            //Adds the rewin to the timelines of the followers
+            feedCache.postAdded(user, idPost);
+
+            stateChanged.set(true); //State of the server changed
+            setResponse(0);
+        } else //Post already rewinned
+            setResponse(3);
     }
 
     /**
      * Adds a comment to a post
      * @param idPost id of the post
      * @param comment comment to add to the post
-     * @param username username of the user who made the request
      */
-    private void addComment(int idPost, String comment, String username) {
-        if (!loggedUsers.containsKey(username)) { //Checks if the user is connected
+    private void addComment(int idPost, String comment) {
+        Session session = connection.getSession();
+        if (session == null) { //Checks if the user is logged in
             setResponse(1);
             return;
         }
@@ -794,17 +945,13 @@ public class ReaderWorker implements Runnable {
 
         //Checks if the post is rewinned by a user followed
         //by the user who made the request
-        User user = users.get(username);
+        User user = session.getUser();
         boolean causedByRewinner = false;
-        for (String rewinner : post.getRewinner()) {
-            for (String userFollowed : user.getFollowed()) {
-                if (rewinner.equals(userFollowed)) {
-                    causedByRewinner = true;
-                    break;
-                }
+        for (int rewinner : post.getRewinner()) {
+            if (user.follows(rewinner)) {
+                causedByRewinner = true;
+                break;
             }
-
-            if (causedByRewinner) break;
         }
 
         //Checks if the user doesn't have the post in his feed.
@@ -817,13 +964,13 @@ public class ReaderWorker implements Runnable {
         }
 
         //The user who wants to add the comment is the author of the post
-        if (post.getAuthor().equals(username)) {
+        if (post.getAuthor() == user.getId()) {
             setResponse(5);
             return;
         }
 
         //Adds the comment to the post
-        post.addComment(new Comment(username, comment));
+        post.addComment(new Comment(user.getId(), comment));
 
         stateChanged.set(true); //State of the server changed
         setResponse(0);
@@ -831,65 +978,88 @@ public class ReaderWorker implements Runnable {
 
     /**
      * Sends to the client the user wallet in wincoin
-     * @param username username of the user who made the request
      */
-    private void getWallet(String username) {
-        if (!loggedUsers.containsKey(username)) { //Checks if the user is logged in
+    private void getWallet() throws IOException {
+        Session session = connection.getSession();
+        if (session == null) { //Checks if the user is logged in
             setResponse(1);
             return;
         }
 
         //Gets the information about the user
-        User user = users.get(username);
+        User user = session.getUser();
 
-        //Sets the wallet as JsonElement as response
+        //Sets the wallet as json response
+        user.getWallet().toJsonFile(jsonResponse());
         setResponse(0);
-        jsonElement = JsonParser.parseString(user.getWalletAsJson());
     }
 
     /**
      * Sends to the client the user wallet in bitcoin
-     * @param username username of the user who made the request
      */
-    private void getWalletBTC(String username) {
-        if (!loggedUsers.containsKey(username)) { //Checks if the user is logged in
+    private void getWalletBTC() throws IOException {
+        Session session = connection.getSession();
+        if (session == null) { //Checks if the user is logged in
             setResponse(1);
             return;
         }
 
         //Gets the information about the user
-        User user = users.get(username);
+        User user = session.getUser();
 
-        //Creates the json string
-        StringBuilder response = new StringBuilder("{\"wincoinBTC\":" + user.getWallet().wincoinToBTC() + ", \"transactions\": [");
+        //Writes the json response
+        JsonWriter writer = jsonResponse();
+        writer.beginObject();
+        writer.name("wincoinBTC").value(user.getWallet().wincoinToBTC(exchangeRateProvider.getRate()));
 
-        boolean firstEntry = true;
-        //Adds every transaction to the json string
-        for (Transaction t : user.getWallet().getTransactions()) {
-            //If it's not the first entry, adds a comma
-            if (!firstEntry) response.append(",");
+        writer.name("transactions");
+        writer.beginArray();
+        //Writes every transaction
+        for (Transaction t : user.getWallet().getTransactions())
+            t.toJsonFile(writer);
+        writer.endArray();
+        writer.endObject();
 
-            response.append(t.toJson());
+        //Sets the response
+        setResponse(0);
+    }
 
-            firstEntry = false;
+    /**
+     * Sends the followers of the user logged in to the client
+     */
+    private void sendFollowers() throws IOException {
+        Session session = connection.getSession();
+        if (session == null) { //Checks if the user is logged in
+            setResponse(1);
+            return;
         }
-        response.append("]}"); //Ends the json string
+
+        //Gets the information about the user
+        User user = session.getUser();
 
         //Sets the response
+        user.followersToJson(jsonResponse());
         setResponse(0);
-        jsonElement = JsonParser.parseString(response.toString());
     }
 
     /**
-     * Sends the followers of a user to the client
-     * @param username username of the user who made the request
+     * Enables the notifications of the followers pushed on this connection,
+     * instead of the RMI callbacks
      */
-    private void sendFollowers(String username) {
-        //Gets the information about the user
-        User user = users.get(username);
+    private void subscribe() {
+        Session session = connection.getSession();
+        if (session == null) { //Checks if the user is logged in
+            setResponse(1);
+            return;
+        }
 
-        //Sets the response
+        if (!connection.canPush()) {
+            //Answers as the servers that don't support the push, so the client uses the RMI callbacks
+            setResponse(-2);
+            return;
+        }
+
+        session.subscribe();
         setResponse(0);
-        jsonElement = JsonParser.parseString(user.getFollowersAsJson());
     }
 }
@@ -41,7 +41,7 @@ public class RecoverState {
                 int id = getIntegerFromJson(jsonReader);
 
                 //Reads authorId
-                String authorId = getStringFromJson(jsonReader);
+                int authorId = UserRegistry.register(getStringFromJson(jsonReader));
 
                 //Reads postTitle
                 String postTitle = getStringFromJson(jsonReader);
@@ -53,16 +53,16 @@ public class RecoverState {
                 Set<Comment> comments = getCommentSetFromJson(jsonReader);
 
                 //Reads upvote
-                Set<String> upvotes = getStringSetFromJson(jsonReader);
+                IntHashSet upvotes = getUserSetFromJson(jsonReader);
 
                 //Reads downvote
-                Set<String> downvotes = getStringSetFromJson(jsonReader);
+                IntHashSet downvotes = getUserSetFromJson(jsonReader);
 
                 //Reads commentStats
-                Map<String, Integer> commentStats = getCommentStatFromJson(jsonReader);
+                IntIntHashMap commentStats = getCommentStatFromJson(jsonReader);
 
                 //Reads users that rewinned this post
-                Set<String> rewinner = getStringSetFromJson(jsonReader);
+                IntHashSet rewinner = getUserSetFromJson(jsonReader);
 
                 //Reads the revenueIteration
                 int revenueIteration = getIntegerFromJson(jsonReader);
@@ -133,10 +133,10 @@ public class RecoverState {
                 String[] tags = getStringListFromJson(jsonReader).toArray(new String[0]);
 
                 //Reads followers
-                Set<String> follower = getStringSetFromJson(jsonReader);
+                IntHashSet follower = getUserSetFromJson(jsonReader);
 
                 //Reads followed
-                Set<String> followed = getStringSetFromJson(jsonReader);
+                IntHashSet followed = getUserSetFromJson(jsonReader);
 
                 //Reads blog
                 Set<Integer> blog = getIntegerSetFromJson(jsonReader);
@@ -149,19 +149,20 @@ public class RecoverState {
                 //End user
                 jsonReader.endObject();
 
-                //Add the user to the server
-                users.put(
+                //Creates the user
+                User user = new User(
                         username,
-                        new User( //Creates the user
-                                username,
-                                password,
-                                tags,
-                                follower,
-                                followed,
-                                blog,
-                                wallet
-                        )
+                        password,
+                        tags,
+                        follower,
+                        followed,
+                        blog,
+                        wallet
                 );
+
+                //Add the user to the server
+                users.put(username, user);
+                TagIndex.add(user);
             }
 
             //Removes ']'
@@ -174,22 +175,51 @@ public class RecoverState {
     }
 
     /**
-     * Reads a string json array
+     * Makes the blogs agree with the posts recovered. The state is saved while the posts
+     * are created, deleted and rewinned, so a change made while saving could be only
+     * in one of the two files. The posts file is the one trusted
+     * @param users users recovered
+     * @param posts posts recovered
+     */
+    public static void reconcile(Map<String, User> users, Map<Integer, Post> posts) {
+        //Removes from the blogs the posts that don't exist, or that the user didn't create nor rewin
+        for (User user : users.values()) {
+            for (int idPost : user.getBlog()) {
+                Post post = posts.get(idPost);
+                if (post == null || (post.getAuthor() != user.getId() && !post.isRewinner(user.getId())))
+                    user.removePost(idPost);
+            }
+        }
+
+        //Adds every post to the blogs of its author and of its rewinners
+        for (Post post : posts.values()) {
+            User author = users.get(UserRegistry.getUsername(post.getAuthor()));
+            if (author != null) author.addPost(post.getIdPost());
+
+            for (int rewinner : post.getRewinner()) {
+                User rewinnerUser = users.get(UserRegistry.getUsername(rewinner));
+                if (rewinnerUser != null) rewinnerUser.addPost(post.getIdPost());
+            }
+        }
+    }
+
+    /**
+     * Reads a json array of usernames
      * @param jsonReader reader to read from a file
-     * @return a set of strings
+     * @return a set of the ids of the users
      */
-    private static Set<String> getStringSetFromJson(JsonReader jsonReader) throws IOException {
+    private static IntHashSet getUserSetFromJson(JsonReader jsonReader) throws IOException {
         //Reads the name
         jsonReader.nextName();
         //Removes '['
         jsonReader.beginArray();
 
-        Set<String> follower = ConcurrentHashMap.newKeySet(); //Creates a concurrent set
+        IntHashSet users = new IntHashSet();
         while (jsonReader.hasNext()) //Reads all the elements in the array
-            follower.add(jsonReader.nextString());
+            users.add(UserRegistry.register(jsonReader.nextString()));
         jsonReader.endArray(); //Removes the ']'
 
-        return follower;
+        return users;
     }
 
     /**
@@ -204,12 +234,17 @@ public class RecoverState {
         jsonReader.beginArray();
 
         Set<Comment> comments = ConcurrentHashMap.newKeySet(); //Creates a concurrent set
-        Gson gson = new Gson();
         int nextId = 0;
         //Reads all the elements in the array
         while (jsonReader.hasNext()) {
             //Reads a comment from the json array
-            Comment comment = gson.fromJson(jsonReader, Comment.class);
+            jsonReader.beginObject();
+            Comment comment = new Comment(
+                    getIntegerFromJson(jsonReader), //Reads idComment
+                    UserRegistry.register(getStringFromJson(jsonReader)), //Reads author
+                    getStringFromJson(jsonReader) //Reads content
+            );
+            jsonReader.endObject();
 
             comments.add(comment);
 
@@ -285,17 +320,17 @@ public class RecoverState {
     /**
      * Reads a map from json
      * @param jsonReader reader to read from a file
-     * @return the map read
+     * @return the map read, with the ids of the users as keys
      */
-    private static Map<String, Integer> getCommentStatFromJson(JsonReader jsonReader) throws IOException{
+    private static IntIntHashMap getCommentStatFromJson(JsonReader jsonReader) throws IOException{
         //Reads the name
         jsonReader.nextName();
         //Removes the '['
         jsonReader.beginObject();
-        Map<String, Integer> commentStat = new ConcurrentHashMap<>();
+        IntIntHashMap commentStat = new IntIntHashMap();
 
         while (jsonReader.hasNext()) { //Reads all the elements in the array
-            commentStat.put(jsonReader.nextName(), jsonReader.nextInt());
+            commentStat.put(UserRegistry.register(jsonReader.nextName()), jsonReader.nextInt());
         }
 
         jsonReader.endObject(); //Removes the ']'
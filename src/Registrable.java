@@ -1,51 +1,35 @@
 /**
  * This is a utility class to mark client as ready
- * to be re-registered
+ * to be served again by its reactor after an event
  */
 
-import com.google.gson.JsonElement;
-
-import java.nio.ByteBuffer;
-import java.nio.channels.SocketChannel;
+import java.nio.channels.SelectionKey;
 
 public class Registrable {
-    private final SocketChannel clientChannel;
-    private final int operation;
-    private final ByteBuffer byteBuffer;
-    private final JsonElement jsonElement;
-
-    public Registrable(SocketChannel clientChannel, int operation, ByteBuffer byteBuffer, JsonElement jsonElement) {
-        this.clientChannel = clientChannel;
-        this.operation = operation;
-        this.byteBuffer = byteBuffer;
-        this.jsonElement = jsonElement;
-    }
+    //Events handled by the reactor
+    public static final int RESPONSE_READY = 0; //A worker queued the response of the request it served
+    public static final int FLUSH = 1; //Some frames were queued by another thread and must be written
+    public static final int CLOSE = 2; //Another thread asked to close the connection
 
-    /**
-     * @return socketchannel
-     */
-    public SocketChannel getClientChannel() {
-        return clientChannel;
-    }
+    private final SelectionKey key;
+    private final int event;
 
-    /**
-     * @return operation
-     */
-    public int getOperation() {
-        return operation;
+    public Registrable(SelectionKey key, int event) {
+        this.key = key;
+        this.event = event;
     }
 
     /**
-     * @return buffer
+     * @return key of the client
      */
-    public ByteBuffer getByteBuffer() {
-        return byteBuffer;
+    public SelectionKey getKey() {
+        return key;
     }
 
     /**
-     * @return JsonElement
+     * @return event that happened on the client
      */
-    public JsonElement getJsonElement() {
-        return jsonElement;
+    public int getEvent() {
+        return event;
     }
 }
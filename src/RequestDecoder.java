@@ -0,0 +1,103 @@
+/**
+ * This class implements the decoder of the requests sent by a client.
+ * It's a state machine that collects the bytes of a request across
+ * different reads, so a request can arrive in more fragments
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+public class RequestDecoder {
+    //Maximum length accepted for a request
+    private static final int MAX_REQUEST_LENGTH = 1024 * 1024;
+
+    private final BufferPool bufferPool;
+    private ByteBuffer byteBuffer = null; //Leased only while there are bytes to decode
+
+    private int requestLen = -1; //Length of the request that is being read, -1 if it's not known yet
+    private byte []request = null;
+    private int totalRead = 0; //Bytes of the request already read
+
+    public RequestDecoder(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Reads the bytes available on the channel without blocking
+     * @param client channel to read from
+     * @return the number of bytes read, -1 if the client closed the connection
+     * @throws IOException if some IO error occurs
+     */
+    public int read(SocketChannel client) throws IOException {
+        //Leases a buffer only when the client is sending something, big enough for the rest of the request
+        if (byteBuffer == null) byteBuffer = bufferPool.lease(requestLen == -1 ? 0 : requestLen - totalRead);
+
+        return client.read(byteBuffer);
+    }
+
+    /**
+     * Decodes the bytes read until now
+     * @return the bytes of the request if it was read completely, null otherwise
+     * @throws IOException if the client sent an invalid request length
+     */
+    public byte[] nextRequest() throws IOException {
+        //There are no bytes to decode
+        if (byteBuffer == null) return null;
+
+        //Prepares the buffer to be read
+        byteBuffer.flip();
+
+        try {
+            if (requestLen == -1) { //Needs to read the request length
+                //The length is not arrived completely
+                if (byteBuffer.remaining() < Integer.BYTES) return null;
+
+                //Reads the request len
+                requestLen = byteBuffer.getInt();
+                if (requestLen < 0 || requestLen > MAX_REQUEST_LENGTH)
+                    throw new IOException("Invalid request length: " + requestLen);
+
+                //The request grows as its bytes arrive, so a client can't reserve memory only declaring a length
+                request = new byte[Math.min(requestLen, byteBuffer.remaining())];
+                totalRead = 0;
+            }
+
+            //Reads the bytes of the request available in the buffer
+            int toRead = Math.min(byteBuffer.remaining(), requestLen - totalRead);
+            if (totalRead + toRead > request.length)
+                request = Arrays.copyOf(request, Math.min(requestLen, Math.max(request.length * 2, totalRead + toRead)));
+            byteBuffer.get(request, totalRead, toRead);
+            totalRead += toRead;
+
+            //The request is not arrived completely
+            if (totalRead < requestLen) return null;
+
+            byte []completeRequest = request;
+
+            //Resets the state to read the next request
+            requestLen = -1;
+            request = null;
+            totalRead = 0;
+
+            return completeRequest;
+        } finally {
+            //Keeps the bytes not read yet and prepares the buffer to be written
+            byteBuffer.compact();
+
+            //Returns the buffer to the pool if there are no more bytes to decode
+            if (byteBuffer.position() == 0) release();
+        }
+    }
+
+    /**
+     * Returns the buffer to the pool
+     */
+    public void release() {
+        if (byteBuffer == null) return;
+
+        bufferPool.release(byteBuffer);
+        byteBuffer = null;
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * This class implements a writer that encodes the characters as UTF-8
+ * directly into a chain of pooled direct buffers, ready to be sent
+ * to the client with a gathering write
+ */
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ResponseWriter extends Writer {
+    private final BufferPool bufferPool;
+    private final List<ByteBuffer> buffers;
+    private ByteBuffer currentBuffer = null;
+    private int length = 0; //Number of bytes written
+
+    private char highSurrogate = 0; //First half of a surrogate pair not written yet
+
+    public ResponseWriter(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+        this.buffers = new ArrayList<>();
+    }
+
+    public void write(int c) {
+        writeChar((char) c);
+    }
+
+    public void write(char []cbuf, int off, int len) {
+        for (int i = off; i < off + len; i++)
+            writeChar(cbuf[i]);
+    }
+
+    public void write(String str, int off, int len) {
+        for (int i = off; i < off + len; i++)
+            writeChar(str.charAt(i));
+    }
+
+    public void flush() {}
+
+    public void close() {}
+
+    /**
+     * @return the number of bytes written
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns the buffers that contains the bytes written.
+     * The buffers are ready to be read
+     * @return the buffers that contains the bytes written
+     */
+    public ByteBuffer[] getBuffers() {
+        for (ByteBuffer byteBuffer : buffers)
+            byteBuffer.flip();
+
+        return buffers.toArray(new ByteBuffer[0]);
+    }
+
+    /**
+     * Returns the buffers to the pool
+     */
+    public void release() {
+        for (ByteBuffer byteBuffer : buffers)
+            bufferPool.release(byteBuffer);
+
+        buffers.clear();
+        currentBuffer = null;
+    }
+
+    /**
+     * Encodes a character, joining the surrogate pairs
+     * @param c character to encode
+     */
+    private void writeChar(char c) {
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+
+            if (Character.isLowSurrogate(c)) { //Completes the surrogate pair
+                writeCodePoint(Character.toCodePoint(high, c));
+                return;
+            }
+            //The surrogate pair is not valid
+            writeCodePoint('?');
+        }
+
+        if (Character.isHighSurrogate(c)) highSurrogate = c;
+        else if (Character.isLowSurrogate(c)) writeCodePoint('?');
+        else writeCodePoint(c);
+    }
+
+    /**
+     * Encodes a code point as UTF-8
+     * @param codePoint code point to encode
+     */
+    private void writeCodePoint(int codePoint) {
+        if (codePoint < 0x80) {
+            putByte(codePoint);
+        } else if (codePoint < 0x800) {
+            putByte(0xC0 | (codePoint >> 6));
+            putByte(0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            putByte(0xE0 | (codePoint >> 12));
+            putByte(0x80 | ((codePoint >> 6) & 0x3F));
+            putByte(0x80 | (codePoint & 0x3F));
+        } else {
+            putByte(0xF0 | (codePoint >> 18));
+            putByte(0x80 | ((codePoint >> 12) & 0x3F));
+            putByte(0x80 | ((codePoint >> 6) & 0x3F));
+            putByte(0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    /**
+     * Writes a byte to the current buffer, leasing a new buffer when it's full
+     * @param b byte to write
+     */
+    private void putByte(int b) {
+        if (currentBuffer == null || !currentBuffer.hasRemaining()) {
+            //Each new buffer is twice as big as the previous one
+            currentBuffer = bufferPool.lease(currentBuffer == null ? 0 : 2 * currentBuffer.capacity());
+            buffers.add(currentBuffer);
+        }
+
+        currentBuffer.put((byte) b);
+        length++;
+    }
+}
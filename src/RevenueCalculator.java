@@ -7,7 +7,6 @@ import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.MulticastSocket;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class RevenueCalculator implements Runnable{
@@ -40,14 +39,14 @@ public class RevenueCalculator implements Runnable{
                 for (Post post : posts.values()) {
                     double gain = 0;
                     //Gets recent commenters
-                    Set<String> contributors = post.getRecentCommenters();
+                    IntHashSet contributors = post.getRecentCommenters();
 
                     //Gets the current post iteration
                     int iterations = post.getRevenueIteration();
 
                     //Gets the usernames of the users who recently contributed
                     //to the post with an upvote
-                    Set<String> upvoteContributors = post.getRecentUpvotesAndReset();
+                    IntHashSet upvoteContributors = post.getRecentUpvotesAndReset();
 
                     //Gets recent upvotes and recent downvotes
                     int upvotes = upvoteContributors.size();
@@ -70,18 +69,19 @@ public class RevenueCalculator implements Runnable{
                     if (gain == 0.0) continue;
 
                     //Adds the gain to the author
-                    users.get(post.getAuthor()).getWallet().addWincoin(authorGain);
+                    users.get(UserRegistry.getUsername(post.getAuthor())).getWallet().addWincoin(authorGain);
 
                     //Adds the users who upvoted the post, without duplicates, to the list of
                     //users who receive the wincoins
-                    contributors.addAll(upvoteContributors);
+                    for (int user : upvoteContributors.toArray())
+                        contributors.add(user);
 
                     //Calculates the revenue of the commenter
                     double singleCommenterGain = commentersGain / contributors.size();
 
                     //Adds the gain to each commenter
-                    for (String user : contributors) {
-                        users.get(user).getWallet().addWincoin(singleCommenterGain);
+                    for (int user : contributors.toArray()) {
+                        users.get(UserRegistry.getUsername(user)).getWallet().addWincoin(singleCommenterGain);
                     }
                     stateChanged.set(true); //State of the server changed
                 }
@@ -103,12 +103,12 @@ public class RevenueCalculator implements Runnable{
     /**
      * Calculates the second argument of the second log
      * @param post the post that is being analyzed
-     * @param commenterUsernames list of users that commented the post
+     * @param commenters ids of the users that commented the post
      * @return result of the argument of the second log
      */
-    private double getSecondLogArg(Post post, Set<String> commenterUsernames) {
+    private double getSecondLogArg(Post post, IntHashSet commenters) {
         double result = 0;
-        for (String user : commenterUsernames) {
+        for (int user : commenters.toArray()) {
             result += 2 / (1 + Math.exp(-(post.getNumberOfComments(user)) - 1));
         }
 
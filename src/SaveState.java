@@ -34,13 +34,11 @@ public class SaveState implements Runnable{
                 if (stateChanged.get()) { //If the state of the server has changed
                     System.out.println("Saving state to json files...");
 
+                    //The post operations aren't stopped while saving, each user and post is written
+                    //under its own lock and RecoverState reconciles the two files at startup
                     stateChanged.set(false);
-                    synchronized (users) {
-                        synchronized (posts) {
-                            serverStateToJson(posts, postsFile);
-                            serverStateToJson(users, usersFile);
-                        }
-                    }
+                    serverStateToJson(posts, postsFile);
+                    serverStateToJson(users, usersFile);
 
                     System.out.println("Saved correctly");
                 }
@@ -1,10 +1,6 @@
-import com.google.gson.JsonElement;
-
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
-import java.net.Socket;
-import java.nio.ByteBuffer;
 import java.nio.channels.*;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
@@ -29,18 +25,30 @@ public class ServerMain {
     private static String registerServiceName = "RMI-REGISTER";
 
     private static int bufferSize = 16 * 1024;
+    private static int bufferPoolSize = 256;
 
     private static int corePoolSize = 5;
     private static int maximumPoolSize = 15;
     private static int keepAliveTime = 30000;
 
+    private static int reactorThreads = Runtime.getRuntime().availableProcessors();
+    private static int queueSize = 1000;
+    private static int heavyCorePoolSize = 2;
+    private static int heavyMaximumPoolSize = 4;
+    private static int heavyQueueSize = 100;
+    private static String rejectionPolicy = "busy";
+
+    private static String serverMode = "selector";
+
     private static Map<String, User> users;
     private static Map<Integer, Post> posts;
-    private static Map<String, Socket> loggedUsers;
-    private static Set<Registrable> readyToBeRegistered;
+    private static Map<String, Session> loggedUsers;
 
     private static CallbackHandler callbackHandler;
     private static String callbackHandlerService = "RMI-FOLLOWER-CALLBACK";
+    private static ExecutorService notificationThreads;
+    private static int notificationThreadCount = 2;
+    private static int notificationTimeout = 5000;
 
     private static int calculationTime = 25000;
     private static double authorPercentage = 50;
@@ -49,6 +57,16 @@ public class ServerMain {
     private static int saveStateTime = 15 * 6000;
 
     private static int automaticLogoutCheckTime = 25000;
+    private static int sessionTimeout = 30 * 60000;
+    private static SessionReaper sessionReaper;
+
+    private static ExchangeRateSource exchangeRateSource = new RandomOrgRateSource(5000);
+    private static int exchangeRateRefreshTime = 60000;
+    private static int exchangeRateTTL = 10 * 60000;
+
+    private static int feedSize = 500;
+    private static int feedCelebrityThreshold = 1000;
+    private static FeedCache feedCache;
 
     private static int threadPoolTimeout = 10000;
 
@@ -68,24 +86,22 @@ public class ServerMain {
         posts = new ConcurrentHashMap<>();
         loggedUsers = new ConcurrentHashMap<>();
 
-        //Initializes the concurrent set to handle reads and writes from/for a client
-        readyToBeRegistered = ConcurrentHashMap.newKeySet();
-
         //Recovers the state of the server
         RecoverState.readUsers(users, usersFile);
         RecoverState.readPosts(posts, postsFile);
+        RecoverState.reconcile(users, posts);
 
-        callbackHandler = new CallbackHandler();
-        initializeRMIServices();
+        //Builds the timelines of the users from the recovered state
+        feedCache = new FeedCache(users, posts, feedSize, feedCelebrityThreshold);
+        feedCache.rebuild();
 
-        //Opens the selector
-        Selector selector = null;
-        try {
-            selector = Selector.open();
-        } catch (IOException e) {
-            System.err.println("Error while opening selector: (" + e.getMessage() + ")");
-            System.exit(1);
-        }
+        //Bounds the time waited for a client while delivering a notification with the RMI callbacks
+        System.setProperty("sun.rmi.transport.tcp.responseTimeout", String.valueOf(notificationTimeout));
+        //Creates the threads that deliver the follower notifications
+        notificationThreads = Executors.newFixedThreadPool(notificationThreadCount);
+
+        callbackHandler = new CallbackHandler(loggedUsers, notificationThreads, notificationTimeout);
+        initializeRMIServices();
 
         //Initializes the activeThread list
         List<Thread> activeThread = new ArrayList<>();
@@ -100,27 +116,143 @@ public class ServerMain {
         saveStateThread.start();
         activeThread.add(saveStateThread);
 
-        //Creates and starts the thread that periodically logs out inactive users logged in
-        Thread automaticLogoutThread = new Thread(new AutomaticLogoutHandler(loggedUsers, automaticLogoutCheckTime));
+        //Creates and starts the thread that refreshes the conversion rate to BitCoin
+        ExchangeRateProvider exchangeRateProvider = new ExchangeRateProvider(exchangeRateSource, exchangeRateRefreshTime, exchangeRateTTL);
+        Thread exchangeRateThread = new Thread(exchangeRateProvider);
+        exchangeRateThread.start();
+        activeThread.add(exchangeRateThread);
+
+        //Creates and starts the thread that logs out the users idle for too long
+        sessionReaper = new SessionReaper(loggedUsers, callbackHandler, sessionTimeout, automaticLogoutCheckTime);
+        Thread automaticLogoutThread = new Thread(sessionReaper);
         automaticLogoutThread.start();
         activeThread.add(automaticLogoutThread);
 
-        //Creates the ThreadPool to handle clients requests
-        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(corePoolSize, maximumPoolSize, keepAliveTime, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        //Creates the pool of the buffers used by the clients
+        BufferPool bufferPool = new BufferPool(bufferSize, bufferPoolSize);
+
+        //Opens the server in the configured mode
+        if (serverMode.equals("blocking"))
+            runBlockingServer(bufferPool, exchangeRateProvider, activeThread);
+        else
+            runSelectorServer(bufferPool, exchangeRateProvider, activeThread);
+    }
+
+    /**
+     * Runs the server with the reactors that multiplex the client channels
+     * and a threadpool that serves the requests
+     * @param bufferPool pool of the buffers used by the clients
+     * @param exchangeRateProvider provider of the conversion rate to BitCoin
+     * @param activeThread threads to interrupt at shutdown
+     */
+    private static void runSelectorServer(BufferPool bufferPool, ExchangeRateProvider exchangeRateProvider, List<Thread> activeThread) {
+        //Opens the selector
+        Selector selector = null;
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            System.err.println("Error while opening selector: (" + e.getMessage() + ")");
+            System.exit(1);
+        }
+        //Initializes the list of the selectors to close at shutdown
+        List<Closeable> selectors = new ArrayList<>();
+        selectors.add(selector);
+
+        //Creates the ThreadPool to handle clients requests. The queue is bounded, so under
+        //a spike the pool grows up to MAX-POOL-SIZE and then the requests are rejected
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(corePoolSize, maximumPoolSize, keepAliveTime, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize));
+        //Creates the ThreadPool to handle the requests that can take long, so they don't delay the others
+        ThreadPoolExecutor heavyThreadPool = new ThreadPoolExecutor(heavyCorePoolSize, heavyMaximumPoolSize, keepAliveTime, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(heavyQueueSize));
+        //Drops the rejected requests answering that the server is busy, or serves them in the reactor
+        boolean shedLoad = rejectionPolicy.equals("busy");
+
+        //Creates and starts the reactors that multiplex the client channels
+        Reactor []reactors = new Reactor[reactorThreads];
+        try {
+            for (int i = 0; i < reactorThreads; i++) {
+                reactors[i] = new Reactor(threadPool, heavyThreadPool, shedLoad, bufferPool, users, posts, sessionReaper, callbackHandler, exchangeRateProvider, feedCache, stateChanged);
+                selectors.add(reactors[i].getSelector());
+                new Thread(reactors[i], "Reactor-" + i).start();
+            }
+        } catch (IOException e) {
+            System.err.println("Error while opening selector: (" + e.getMessage() + ")");
+            System.exit(1);
+        }
 
         //Creates the ShutdownHook to terminate the server correctly
-        ShutdownHandler shutdownHandler = new ShutdownHandler(usersFile, postsFile, users, posts, threadPool, activeThread, stateChanged, selector, threadPoolTimeout);
+        ShutdownHandler shutdownHandler = new ShutdownHandler(usersFile, postsFile, users, posts, List.of(threadPool, heavyThreadPool, notificationThreads), activeThread, stateChanged, selectors, threadPoolTimeout);
 
         //Opens the server
-        multiplexChannels(threadPool, selector);
+        multiplexChannels(reactors, selector);
     }
 
     /**
-     * Manages the connections
-     * @param threadPool thread pool that executes tasks
-     * @param selector selector that multiplexes the channels
+     * Runs the server with a thread for each connection that does blocking reads and writes.
+     * The threads are virtual when the JDK supports them
+     * @param bufferPool pool of the buffers used by the clients
+     * @param exchangeRateProvider provider of the conversion rate to BitCoin
+     * @param activeThread threads to interrupt at shutdown
      */
-    private static void multiplexChannels(Executor threadPool, Selector selector) {
+    private static void runBlockingServer(BufferPool bufferPool, ExchangeRateProvider exchangeRateProvider, List<Thread> activeThread) {
+        //Creates the executor that runs a thread for each connection
+        ExecutorService connectionThreads = newConnectionExecutor();
+
+        //Opens the channel that accepts the connections
+        ServerSocketChannel serverSocketChannel = null;
+        try {
+            serverSocketChannel = ServerSocketChannel.open();
+            serverSocketChannel.bind(new InetSocketAddress(serverIP, tcpPort)); //Binds IP and port to the socket
+        } catch (IOException e) {
+            System.err.println("Error while opening the server channel: (" + e.getMessage() + ")");
+            System.exit(1);
+        }
+
+        //Creates the ShutdownHook to terminate the server correctly, closing the channel stops accepting connections
+        List<Closeable> serverChannels = new ArrayList<>();
+        serverChannels.add(serverSocketChannel);
+        ShutdownHandler shutdownHandler = new ShutdownHandler(usersFile, postsFile, users, posts, List.of(connectionThreads, notificationThreads), activeThread, stateChanged, serverChannels, threadPoolTimeout);
+
+        System.out.println("Server started");
+
+        try {
+            while (true) {
+                //Waits for a new connection
+                SocketChannel client = serverSocketChannel.accept();
+                System.out.println(client);
+
+                //Serves the client on its own thread
+                connectionThreads.execute(new BlockingConnectionHandler(client, bufferPool, users, posts, sessionReaper, callbackHandler, exchangeRateProvider, feedCache, stateChanged));
+            }
+        } catch (ClosedChannelException | RejectedExecutionException ignored) { //Server closed
+        } catch (IOException e) {
+            System.err.println("IOException: " + e.getMessage());
+            System.exit(1);
+        }
+
+        System.out.println("Server closed");
+    }
+
+    /**
+     * Creates the executor that runs a thread for each connection. Uses the virtual threads
+     * if they are available, otherwise a platform thread is created for each connection
+     * @return the executor of the connections
+     */
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            //Looked up by reflection, since the virtual threads are available only from Java 21
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Virtual threads not available, using a platform thread for each connection");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Accepts the connections and distributes them among the reactors
+     * @param reactors reactors that multiplex the client channels
+     * @param selector selector that waits for new connections
+     */
+    private static void multiplexChannels(Reactor []reactors, Selector selector) {
         try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
              ServerSocket serverSocket = serverSocketChannel.socket()) {
 
@@ -130,27 +262,13 @@ public class ServerMain {
 
             System.out.println("Server started");
 
-            JsonElement jsonElement = null;
+            int nextReactor = 0;
             while (true) {
                 //Waits for an operation
                 selector.select();
 
                 if (!selector.isOpen()) break; //Thread termination
 
-                //Re-registers the channels ready to be served again
-                for (Registrable r : readyToBeRegistered) {
-                    try {
-                        //Re-registers the channel
-                        r.getClientChannel().register(selector, r.getOperation(), r.getByteBuffer());
-                        //Gets the response to send
-                        jsonElement = r.getJsonElement();
-                    } catch (ClosedChannelException e) {
-                        System.err.println("Error while registering a channel: " + e.getMessage());
-                        break;
-                    }
-                    readyToBeRegistered.remove(r);
-                }
-
                 //Gets the ready key
                 Set<SelectionKey> readyKeys = selector.selectedKeys();
                 Iterator<SelectionKey> iterator = readyKeys.iterator();
@@ -160,42 +278,22 @@ public class ServerMain {
                     SelectionKey key = iterator.next();
                     iterator.remove();
 
-                    try {
-                        if (key.isAcceptable()) { //New connection
-                            ServerSocketChannel server = (ServerSocketChannel) key.channel(); //Gets the channel
-                            SocketChannel client = server.accept(); //Accepts the connection
-                            System.out.println(client);
-
-                            client.configureBlocking(false); //Sets non-blocking mode
-
-                            //Registers the channel in read mode
-                            SelectionKey clientKey = client.register(
-                                    selector,
-                                    SelectionKey.OP_READ
-                            );
-
-                            //Allocates the buffer and attach it to the channel
-                            ByteBuffer byteBuffer = ByteBuffer.allocate(bufferSize);
-                            clientKey.attach(byteBuffer);
-
-                        } else if (key.isReadable()) { //Channel ready in read mode
-                            key.cancel();
-                            threadPool.execute(new ReaderWorker(key, users, posts, loggedUsers, callbackHandler, readyToBeRegistered, selector, stateChanged));
-                        } else if (key.isWritable()) { //Channel ready in write mode
-                            key.cancel();
-                            threadPool.execute(new WriterWorker(key, readyToBeRegistered, selector, jsonElement));
-                        }
-                    } catch (IOException e) {
-                        System.err.println("Error serving requests: " + e.getMessage());
-                        key.cancel();
-                        key.channel().close();
+                    if (key.isAcceptable()) { //New connection
+                        ServerSocketChannel server = (ServerSocketChannel) key.channel(); //Gets the channel
+                        SocketChannel client = server.accept(); //Accepts the connection
+                        if (client == null) continue;
+                        System.out.println(client);
+
+                        //Hands the client to the reactors in round-robin
+                        reactors[nextReactor].addClient(client);
+                        nextReactor = (nextReactor + 1) % reactors.length;
                     }
                 }
             }
         } catch (IOException e) {
             System.err.println("IOException: " + e.getMessage());
             System.exit(1);
-        }
+        } catch (ClosedSelectorException ignored) {}
 
         System.out.println("Server closed");
     }
@@ -274,6 +372,15 @@ public class ServerMain {
                         }
                     }
 
+                    case "BUFFER-POOL-SIZE" -> {
+                        bufferPoolSize = Integer.parseInt(line.split("=")[1]);
+
+                        if (bufferPoolSize < 0) {
+                            System.err.println("BUFFER-POOL-SIZE cannot be negative");
+                            System.exit(1);
+                        }
+                    }
+
                     case "RMI-REGISTER-SERVICE" -> registerServiceName = line.split("=")[1];
 
                     case "POOL-SIZE" -> {
@@ -294,6 +401,69 @@ public class ServerMain {
                         }
                     }
 
+                    case "REACTOR-THREADS" -> {
+                        reactorThreads = Integer.parseInt(line.split("=")[1]);
+
+                        if (reactorThreads < 1) {
+                            System.err.println("REACTOR-THREADS must be at least 1");
+                            System.exit(1);
+                        }
+                    }
+
+                    case "QUEUE-SIZE" -> {
+                        queueSize = Integer.parseInt(line.split("=")[1]);
+
+                        if (queueSize < 1) {
+                            System.err.println("QUEUE-SIZE must be at least 1");
+                            System.exit(1);
+                        }
+                    }
+
+                    case "HEAVY-POOL-SIZE" -> {
+                        heavyCorePoolSize = Integer.parseInt(line.split("=")[1]);
+
+                        if (heavyCorePoolSize < 0) {
+                            System.err.println("HEAVY-POOL-SIZE cannot be negative");
+                            System.exit(1);
+                        }
+                    }
+
+                    case "HEAVY-MAX-POOL-SIZE" -> {
+                        heavyMaximumPoolSize = Integer.parseInt(line.split("=")[1]);
+
+                        if (heavyMaximumPoolSize < 1) {
+                            System.err.println("HEAVY-MAX-POOL-SIZE must be at least 1");
+                            System.exit(1);
+                        }
+                    }
+
+                    case "HEAVY-QUEUE-SIZE" -> {
+                        heavyQueueSize = Integer.parseInt(line.split("=")[1]);
+
+                        if (heavyQueueSize < 1) {
+                            System.err.println("HEAVY-QUEUE-SIZE must be at least 1");
+                            System.exit(1);
+                        }
+                    }
+
+                    case "REJECTION-POLICY" -> {
+                        rejectionPolicy = line.split("=")[1];
+
+                        if (!rejectionPolicy.equals("busy") && !rejectionPolicy.equals("caller-runs")) {
+                            System.err.println("REJECTION-POLICY must be 'busy' or 'caller-runs'");
+                            System.exit(1);
+                        }
+                    }
+
+                    case "SERVER-MODE" -> {
+                        serverMode = line.split("=")[1];
+
+                        if (!serverMode.equals("selector") && !serverMode.equals("blocking")) {
+                            System.err.println("SERVER-MODE must be 'selector' or 'blocking'");
+                            System.exit(1);
+                        }
+                    }
+
                     case "KEEPALIVE" -> {
                         keepAliveTime = Integer.parseInt(line.split("=")[1]);
 
@@ -344,8 +514,92 @@ public class ServerMain {
                     case "AUTOMATIC-LOGOUT" -> {
                         automaticLogoutCheckTime = Integer.parseInt(line.split("=")[1]);
 
-                        if (automaticLogoutCheckTime < 0) {
-                            System.err.println("AUTOMATIC-LOGOUT cannot be negative");
+                        if (automaticLogoutCheckTime <= 0) {
+                            System.err.println("AUTOMATIC-LOGOUT must be positive");
+                            System.exit(1);
+                        }
+                    }
+
+                    case "NOTIFICATION-THREADS" -> {
+                        notificationThreadCount = Integer.parseInt(line.split("=")[1]);
+
+                        if (notificationThreadCount <= 0) {
+                            System.err.println("NOTIFICATION-THREADS must be positive");
+                            System.exit(1);
+                        }
+                    }
+
+                    case "NOTIFICATION-TIMEOUT" -> {
+                        notificationTimeout = Integer.parseInt(line.split("=")[1]);
+
+                        if (notificationTimeout <= 0) {
+                            System.err.println("NOTIFICATION-TIMEOUT must be positive");
+                            System.exit(1);
+                        }
+                    }
+
+                    case "SESSION-TIMEOUT" -> {
+                        sessionTimeout = Integer.parseInt(line.split("=")[1]);
+
+                        if (sessionTimeout <= 0) {
+                            System.err.println("SESSION-TIMEOUT must be positive");
+                            System.exit(1);
+                        }
+                    }
+
+                    case "EXCHANGE-RATE-SOURCE" -> {
+                        String source = line.split("=")[1];
+
+                        if (source.equals("random.org")) {
+                            exchangeRateSource = new RandomOrgRateSource(5000);
+                        } else if (source.startsWith("file:")) {
+                            exchangeRateSource = new FileRateSource(source.substring("file:".length()));
+                        } else if (source.startsWith("fixed:")) {
+                            double rate = Double.parseDouble(source.substring("fixed:".length()));
+
+                            if (rate < 0) {
+                                System.err.println("The rate of EXCHANGE-RATE-SOURCE cannot be negative");
+                                System.exit(1);
+                            }
+                            exchangeRateSource = new FixedRateSource(rate);
+                        } else {
+                            System.err.println("EXCHANGE-RATE-SOURCE must be 'random.org', 'file:<path>' or 'fixed:<rate>'");
+                            System.exit(1);
+                        }
+                    }
+
+                    case "EXCHANGE-RATE-REFRESH" -> {
+                        exchangeRateRefreshTime = Integer.parseInt(line.split("=")[1]);
+
+                        if (exchangeRateRefreshTime <= 0) {
+                            System.err.println("EXCHANGE-RATE-REFRESH must be positive");
+                            System.exit(1);
+                        }
+                    }
+
+                    case "EXCHANGE-RATE-TTL" -> {
+                        exchangeRateTTL = Integer.parseInt(line.split("=")[1]);
+
+                        if (exchangeRateTTL <= 0) {
+                            System.err.println("EXCHANGE-RATE-TTL must be positive");
+                            System.exit(1);
+                        }
+                    }
+
+                    case "FEED-SIZE" -> {
+                        feedSize = Integer.parseInt(line.split("=")[1]);
+
+                        if (feedSize <= 0) {
+                            System.err.println("FEED-SIZE must be positive");
+                            System.exit(1);
+                        }
+                    }
+
+                    case "FEED-CELEBRITY-THRESHOLD" -> {
+                        feedCelebrityThreshold = Integer.parseInt(line.split("=")[1]);
+
+                        if (feedCelebrityThreshold < 0) {
+                            System.err.println("FEED-CELEBRITY-THRESHOLD cannot be negative");
                             System.exit(1);
                         }
                     }
@@ -364,6 +618,11 @@ public class ServerMain {
                 System.exit(1);
             }
 
+            if (heavyMaximumPoolSize < heavyCorePoolSize) {
+                System.err.println("HEAVY-MAX-POOL-SIZE must be grater or equal then HEAVY-POOL-SIZE");
+                System.exit(1);
+            }
+
         } catch (IOException e) {
             System.err.println("Error while parsing the config file: " + e.getMessage());
             System.exit(1);
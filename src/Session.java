@@ -0,0 +1,124 @@
+/**
+ * This class implements the session of a user logged in on a connection.
+ * It's bound to the connection at the login, so the requests don't carry
+ * the username and the handlers get the user without looking it up
+ */
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+
+public class Session {
+    private final User user;
+    private final String username; //Interned username of the user
+    private final SocketChannel client;
+    private final ClientConnection connection;
+    private final SessionReaper sessionReaper;
+
+    private volatile long lastActivity; //Time of the last request
+    private volatile boolean closed = false;
+    private volatile boolean subscribed = false; //True if the notifications are pushed on the connection
+
+    public Session(User user, SocketChannel client, ClientConnection connection, SessionReaper sessionReaper) {
+        this.user = user;
+        this.username = user.getUsername().intern();
+        this.client = client;
+        this.connection = connection;
+        this.sessionReaper = sessionReaper;
+
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the user logged in
+     */
+    public User getUser() {
+        return user;
+    }
+
+    /**
+     * @return the username of the user logged in
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Updates the time of the last activity, so the session doesn't expire
+     */
+    public void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the time of the last request made in this session
+     */
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    /**
+     * @return true if the connection of the session is still open
+     */
+    public boolean isConnected() {
+        return client.isOpen();
+    }
+
+    /**
+     * @return true if the user logged out
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Enables the notifications of the followers pushed on the connection
+     */
+    public void subscribe() {
+        subscribed = true;
+    }
+
+    /**
+     * @return true if the notifications of the followers are pushed on the connection
+     */
+    public boolean isSubscribed() {
+        return subscribed;
+    }
+
+    /**
+     * Pushes on the connection the notification of a new or a lost follower
+     * @param follower username of the follower
+     * @param followed true if it's a new follower, false if it's a lost follower
+     * @param timeout maximum time the client can leave the notifications unread
+     * @throws IOException if the notification can't be sent
+     */
+    public void push(String follower, boolean followed, long timeout) throws IOException {
+        connection.queuePush(follower, followed, timeout);
+    }
+
+    /**
+     * Marks the user as logged in
+     * @return false if the user is already logged in with another session
+     */
+    public boolean open() {
+        return sessionReaper.open(this);
+    }
+
+    /**
+     * Marks the user as logged out
+     */
+    public void close() {
+        closed = true;
+        sessionReaper.close(this);
+    }
+
+    /**
+     * Closes the connection of the session. With a reactor the connection is closed
+     * and released by the reactor, otherwise the thread that serves the connection
+     * releases it when its read fails
+     */
+    public void closeConnection() {
+        if (connection.requestClose()) return;
+
+        try {client.close();} catch (Exception ignored) {}
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * This class implements the registry of the sessions and a task that automatically
+ * logs out the users idle for too long.
+ * The sessions are kept in a hashed timing wheel: each slot contains the sessions
+ * that expire in the same tick, so at each tick only one slot is scanned.
+ * The requests only update the last activity of their session: when the slot of
+ * a session is scanned, the session is moved to the slot of its new expiration
+ * if it was active in the meantime, otherwise it's expired
+ */
+
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class SessionReaper implements Runnable {
+    //Number of slots of the wheel
+    private static final int WHEEL_SIZE = 512;
+
+    private final Map<String, Session> loggedUsers;
+    private final CallbackHandler callbackHandler;
+    private final long sessionTimeout; //Idle time after which a session expires
+    private final long tickTime; //Time covered by each slot
+
+    private final Queue<Session> newSessions; //Sessions opened and not scheduled yet
+    private final List<Queue<Session>> wheel; //Slots of the wheel, used only by the reaper thread
+    private long currentTick; //Next tick to scan
+
+    public SessionReaper(Map<String, Session> loggedUsers, CallbackHandler callbackHandler, long sessionTimeout, long tickTime) {
+        this.loggedUsers = loggedUsers;
+        this.callbackHandler = callbackHandler;
+        this.sessionTimeout = sessionTimeout;
+        this.tickTime = tickTime;
+
+        newSessions = new ConcurrentLinkedQueue<>();
+        wheel = new ArrayList<>(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++)
+            wheel.add(new ArrayDeque<>());
+
+        currentTick = System.currentTimeMillis() / tickTime;
+    }
+
+    /**
+     * Marks the user of a session as logged in
+     * @param session session of the user
+     * @return false if the user is already logged in with another session
+     */
+    public boolean open(Session session) {
+        if (loggedUsers.putIfAbsent(session.getUsername(), session) != null) return false;
+
+        //The session is added to the wheel by the reaper thread
+        newSessions.add(session);
+        return true;
+    }
+
+    /**
+     * Marks the user of a session as logged out. The session is removed
+     * from the wheel when its slot is scanned
+     * @param session session of the user
+     */
+    public void close(Session session) {
+        loggedUsers.remove(session.getUsername(), session);
+    }
+
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long now = System.currentTimeMillis();
+
+                //Schedules the sessions opened since the last tick
+                Session session;
+                while ((session = newSessions.poll()) != null)
+                    schedule(session);
+
+                //Scans the slots of the ticks elapsed
+                long lastTick = now / tickTime;
+                while (currentTick <= lastTick) {
+                    expireSlot(wheel.get((int) (currentTick % WHEEL_SIZE)), now);
+                    currentTick++;
+                }
+
+                //Waits until next tick
+                Thread.sleep(tickTime - now % tickTime);
+            }
+        } catch (InterruptedException ignored) {}
+    }
+
+    /**
+     * Adds a session to the slot of the tick when it expires
+     * @param session session to schedule
+     */
+    private void schedule(Session session) {
+        //The session is never added to a slot already scanned
+        long expirationTick = Math.max((session.getLastActivity() + sessionTimeout) / tickTime, currentTick + 1);
+        wheel.get((int) (expirationTick % WHEEL_SIZE)).add(session);
+    }
+
+    /**
+     * Scans the sessions of a slot, expiring the idle ones and rescheduling the other ones.
+     * The sessions that expire in a later round of the wheel are rescheduled in the same slot
+     * @param slot slot to scan
+     * @param now current time
+     */
+    private void expireSlot(Queue<Session> slot, long now) {
+        //Scans only the sessions that were in the slot before the scan
+        for (int i = slot.size(); i > 0; i--) {
+            Session session = slot.poll();
+
+            if (session.isClosed()) continue; //The user logged out
+
+            if (session.getLastActivity() + sessionTimeout <= now || !session.isConnected())
+                expire(session);
+            else
+                schedule(session);
+        }
+    }
+
+    /**
+     * Logs out the user of an expired session and closes its connection
+     * @param session expired session
+     */
+    private void expire(Session session) {
+        session.close();
+
+        try {
+            //The client can't receive the notifications anymore
+            if (!session.isSubscribed()) callbackHandler.unregisterForCallback(session.getUsername());
+        } catch (RemoteException e) {
+            System.err.println("Error while unregistering the client: " + e.getMessage());
+        }
+
+        session.closeConnection();
+    }
+}
@@ -5,11 +5,11 @@
  *  after a reboot
  */
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.nio.channels.Selector;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -18,42 +18,46 @@ public class ShutdownHandler {
     private final String postsFile;
     private final Map<String, User> users;
     private final Map<Integer, Post> posts;
-    private final ThreadPoolExecutor threadPool;
+    private final List<ExecutorService> threadPools;
     private final List<Thread> activeThreads;
     private final AtomicBoolean stateChanged;
-    private final Selector selector;
+    private final List<Closeable> selectors; //Selectors and server channels to close
 
     private final int threadPoolTimeout;
 
-    public ShutdownHandler(String usersFile, String postsFile, Map<String, User> users, Map<Integer, Post> posts, ThreadPoolExecutor threadPool, List<Thread> activeThreads, AtomicBoolean stateChanged, Selector selector, int threadPoolTimeout) {
+    public ShutdownHandler(String usersFile, String postsFile, Map<String, User> users, Map<Integer, Post> posts, List<ExecutorService> threadPools, List<Thread> activeThreads, AtomicBoolean stateChanged, List<Closeable> selectors, int threadPoolTimeout) {
         this.usersFile = usersFile;
         this.postsFile = postsFile;
         this.users = users;
         this.posts = posts;
-        this.threadPool = threadPool;
+        this.threadPools = threadPools;
         this.activeThreads = activeThreads;
         this.stateChanged = stateChanged;
-        this.selector = selector;
+        this.selectors = selectors;
         this.threadPoolTimeout = threadPoolTimeout;
 
         Runtime.getRuntime().addShutdownHook(new Thread() {
             public void run() {
-                //Closes the selector
-                try {selector.close();} catch (IOException ignored) {}
+                //Closes the selectors and the server channels
+                for (Closeable selector : selectors)
+                    try {selector.close();} catch (IOException ignored) {}
 
-                //Shutdowns the threadpool
-                threadPool.shutdown();
+                //Shutdowns the threadpools
+                for (ExecutorService threadPool : threadPools)
+                    threadPool.shutdown();
 
                 //Interrupts every thread active
                 for (Thread thread : activeThreads)
                     thread.interrupt();
 
-                try {
-                    boolean terminated = threadPool.awaitTermination(threadPoolTimeout, TimeUnit.MILLISECONDS);
-                    if (!terminated) threadPool.shutdownNow();
-                } catch (InterruptedException e) {
-                    //If threadpool isn't terminated forces the shutdown
-                    if (!threadPool.isTerminated()) threadPool.shutdownNow();
+                for (ExecutorService threadPool : threadPools) {
+                    try {
+                        boolean terminated = threadPool.awaitTermination(threadPoolTimeout, TimeUnit.MILLISECONDS);
+                        if (!terminated) threadPool.shutdownNow();
+                    } catch (InterruptedException e) {
+                        //If threadpool isn't terminated forces the shutdown
+                        if (!threadPool.isTerminated()) threadPool.shutdownNow();
+                    }
                 }
 
                 //If the state changed saves the state of the server
@@ -43,9 +43,13 @@ public class SignUpService implements RegisterInterface {
             try {
                 //Tries to register a new user
                 //The password is stored as the hash value of the concatenation of the username and the password
-                if (users.putIfAbsent(username, new User(username, Hash.bytesToHex(Hash.sha256(username + password)), tags)) != null)
+                User user = new User(username, Hash.bytesToHex(Hash.sha256(username + password)), tags);
+                if (users.putIfAbsent(username, user) != null)
                     return 4; //User already registered
 
+                //Makes the user visible to list users
+                TagIndex.add(user);
+
                 stateChanged.set(true);
                 return 0; //User registered correctly
             } catch (NoSuchAlgorithmException e) {
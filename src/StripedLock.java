@@ -0,0 +1,75 @@
+/**
+ * This class implements a fixed number of locks shared by the entities whose ids
+ * fall in the same stripe, so the operations on different entities usually run
+ * in parallel without a lock for each entity.
+ * The stripes are always locked in ascending order, so two operations can't deadlock
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class StripedLock {
+    private final ReentrantLock []stripes;
+
+    /**
+     * @param stripeCount number of stripes, it must be a power of two
+     */
+    public StripedLock(int stripeCount) {
+        if (Integer.bitCount(stripeCount) != 1) throw new IllegalArgumentException("The number of stripes must be a power of two");
+
+        stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++)
+            stripes[i] = new ReentrantLock();
+    }
+
+    /**
+     * Spreads the bits of the id, since the ids are dense
+     * @param id id of the entity
+     * @return the stripe of the entity
+     */
+    private int stripeOf(int id) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (stripes.length - 1);
+    }
+
+    /**
+     * Locks the stripes of some entities in ascending order, each stripe only once
+     * @param ids ids of the entities
+     * @return the stripes locked, to pass to unlock
+     */
+    public int[] lock(int ...ids) {
+        int []locked = new int[ids.length];
+        for (int i = 0; i < ids.length; i++)
+            locked[i] = stripeOf(ids[i]);
+        Arrays.sort(locked);
+
+        //Removes the duplicated stripes
+        int count = 0;
+        for (int i = 0; i < locked.length; i++)
+            if (count == 0 || locked[i] != locked[count - 1]) locked[count++] = locked[i];
+        locked = Arrays.copyOf(locked, count);
+
+        for (int stripe : locked)
+            stripes[stripe].lock();
+
+        return locked;
+    }
+
+    /**
+     * Unlocks the stripes locked by lock, in reverse order
+     * @param locked stripes returned by lock
+     */
+    public void unlock(int []locked) {
+        for (int i = locked.length - 1; i >= 0; i--)
+            stripes[locked[i]].unlock();
+    }
+
+    /**
+     * @param id id of an entity
+     * @param locked stripes returned by lock
+     * @return true iff the stripe of the entity is among the ones locked, false otherwise
+     */
+    public boolean covers(int id, int []locked) {
+        return Arrays.binarySearch(locked, stripeOf(id)) >= 0;
+    }
+}
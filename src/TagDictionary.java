@@ -0,0 +1,76 @@
+/**
+ * This class implements the dictionary that assigns a small int id to each tag.
+ * The users store the ids of their tags and a bitmask of them, so the tags in common
+ * between two users are found with an AND instead of comparing strings.
+ * The tag names are resolved only when they are written in json.
+ * The ids aren't persisted: they are assigned again when the state is recovered
+ */
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class TagDictionary {
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String []tags = new String[Long.SIZE]; //Name of each id
+    private static int nextId = 0;
+
+    /**
+     * Assigns an id to a tag, if it doesn't have one yet
+     * @param tag tag to register
+     * @return the id of the tag
+     */
+    public static int register(String tag) {
+        Integer id = ids.get(tag);
+        if (id != null) return id;
+
+        synchronized (TagDictionary.class) {
+            id = ids.get(tag);
+            if (id != null) return id;
+
+            String []names = tags;
+            if (nextId == names.length) names = Arrays.copyOf(names, names.length * 2);
+            names[nextId] = tag;
+            //Publishes the name before its id can be read from the map
+            tags = names;
+
+            ids.put(tag, nextId);
+            return nextId++;
+        }
+    }
+
+    /**
+     * Assigns an id to each tag of a list
+     * @param tags tags to register
+     * @return the ids of the tags, in the same order
+     */
+    public static int[] register(String []tags) {
+        int []tagIds = new int[tags.length];
+        for (int i = 0; i < tags.length; i++)
+            tagIds[i] = register(tags[i]);
+
+        return tagIds;
+    }
+
+    /**
+     * @param id id of a registered tag
+     * @return the name of the tag with that id
+     */
+    public static String getTag(int id) {
+        return tags[id];
+    }
+
+    /**
+     * Builds the bitmask of a list of tags. Only the first 64 tags registered
+     * fit in the mask, the other ones must be compared by id
+     * @param tagIds ids of the tags
+     * @return the mask with the bit of each tag that fits in it
+     */
+    public static long toMask(int []tagIds) {
+        long mask = 0;
+        for (int id : tagIds)
+            if (id < Long.SIZE) mask |= 1L << id;
+
+        return mask;
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * This class implements the inverted index from each tag to the ids of the users
+ * who chose it, so the users with a tag in common are found by reading at most
+ * 5 posting lists instead of comparing the tags of every user.
+ * The index isn't persisted: it's filled when the users are registered or recovered
+ */
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class TagIndex {
+    private static final Map<Integer, IntHashSet> postings = new ConcurrentHashMap<>(); //Ids of the users of each tag id
+
+    /**
+     * Adds a user to the posting lists of its tags
+     * @param user user to index
+     */
+    public static void add(User user) {
+        for (int tagId : user.getTagIds())
+            postings.computeIfAbsent(tagId, t -> new IntHashSet()).add(user.getId());
+    }
+
+    /**
+     * @param tagId id of the tag in the TagDictionary
+     * @return a copy of the ids of the users who chose the tag
+     */
+    public static int[] getUsers(int tagId) {
+        IntHashSet users = postings.get(tagId);
+
+        return users != null ? users.toArray() : new int[0];
+    }
+}
@@ -0,0 +1,366 @@
+/**
+ * This class implements the decoder of the requests sent with the text protocol.
+ * The request is tokenized directly on its bytes: the command is matched with a
+ * table of keywords and only the fields are converted, without splitting the request.
+ * The fields have the same order and the same types of the binary protocol.
+ * The fields of post and comment are separated by '/', the other ones by a space.
+ * The fields of list users, blog and show feed can be omitted, the missing ones are decoded as -1.
+ * The requests of a user logged in can end with the username, as sent by the clients
+ * that predate the sessions: it's decoded apart and it isn't a field of the request.
+ * A batch request starts with the line "batch" and each following line is a sub-request
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TextRequest implements DecodedRequest {
+    //Opcode of the commands that need a valid subcommand, like list and show
+    private static final byte INVALID_SUBCOMMAND = -1;
+    //Value of the optional fields omitted
+    private static final int MISSING_FIELD = -1;
+
+    //Keywords of the commands, a keyword must come before the shorter keywords that are its prefix
+    private static final byte [][]KEYWORDS = {
+            keyword("login"), keyword("logout"),
+            keyword("list users"), keyword("list following"), keyword("list"),
+            keyword("post"), keyword("delete"), keyword("follow"), keyword("unfollow"), keyword("rate"), keyword("blog"),
+            keyword("show post"), keyword("show feed"), keyword("show"),
+            keyword("rewin"), keyword("comment"),
+            keyword("wallet btc"), keyword("wallet"),
+            keyword("getFollowers"), keyword("batch"), keyword("subscribe")
+    };
+    //Opcodes of the keywords, in the same order
+    private static final byte []OPCODES = {
+            BinaryRequest.LOGIN, BinaryRequest.LOGOUT,
+            BinaryRequest.LIST_USERS, BinaryRequest.LIST_FOLLOWING, INVALID_SUBCOMMAND,
+            BinaryRequest.POST, BinaryRequest.DELETE, BinaryRequest.FOLLOW, BinaryRequest.UNFOLLOW, BinaryRequest.RATE, BinaryRequest.BLOG,
+            BinaryRequest.SHOW_POST, BinaryRequest.SHOW_FEED, INVALID_SUBCOMMAND,
+            BinaryRequest.REWIN, BinaryRequest.COMMENT,
+            BinaryRequest.WALLET_BTC, BinaryRequest.WALLET,
+            BinaryRequest.GET_FOLLOWERS, BinaryRequest.BATCH, BinaryRequest.SUBSCRIBE
+    };
+
+    private final byte []request;
+    private final int limit; //End of the request in the bytes
+
+    private byte opcode = 0;
+    private int []ints = new int[0];
+    private String []strings = new String[0];
+    private List<TextRequest> subRequests = null;
+    private String username = null; //Username sent after the fields, null if it's omitted
+    private int numericField = -1; //Index of the last optional field when it ends the request, it could be a numeric username
+    private int numericFieldStart = -1; //Position of the first byte of that field
+    private boolean malformed = false;
+
+    /**
+     * Decodes a text request
+     * @param request bytes of the request
+     */
+    public TextRequest(byte []request) {
+        this(request, 0, request.length);
+    }
+
+    /**
+     * Decodes a text request contained in a part of the bytes
+     * @param request bytes that contain the request
+     * @param offset position of the first byte of the request
+     * @param limit position after the last byte of the request
+     */
+    private TextRequest(byte []request, int offset, int limit) {
+        this.request = request;
+        this.limit = limit;
+
+        try {
+            decode(offset);
+        } catch (IllegalArgumentException e) {
+            malformed = true;
+        }
+    }
+
+    /**
+     * Decodes the opcode and the fields of the request
+     * @param offset position of the first byte of the request
+     * @throws IllegalArgumentException if the request is malformed
+     */
+    private void decode(int offset) {
+        int keyword = matchKeyword(request, offset, limit);
+        //Unknown command, the request can't be decoded
+        if (keyword == -1) return;
+
+        if (OPCODES[keyword] == INVALID_SUBCOMMAND) throw new IllegalArgumentException("Invalid subcommand");
+
+        opcode = OPCODES[keyword];
+        int position = offset + KEYWORDS[keyword].length;
+
+        String fieldTypes = BinaryRequest.getFieldTypes(opcode);
+        boolean trailingUsername = acceptsUsername(opcode);
+        if (opcode != BinaryRequest.BATCH && fieldTypes.isEmpty() && !trailingUsername) {
+            //The request is made only of the keyword
+            if (position != limit) throw new IllegalArgumentException("Too many fields");
+            return;
+        }
+
+        int []ints = new int[fieldTypes.length()];
+        String []strings = new String[fieldTypes.length()];
+        boolean optionalFields = hasOptionalFields(opcode);
+        if (optionalFields) Arrays.fill(ints, MISSING_FIELD);
+
+        if (position == limit && (optionalFields || fieldTypes.isEmpty())) {
+            //All the fields are omitted
+            this.ints = ints;
+            this.strings = strings;
+            return;
+        }
+
+        if (position++ == limit) throw new IllegalArgumentException("Missing fields"); //Skips the separator
+
+        if (opcode == BinaryRequest.BATCH) {
+            decodeSubRequests(position);
+            return;
+        }
+
+        byte separator = (byte) ' ';
+        if (opcode == BinaryRequest.POST || opcode == BinaryRequest.COMMENT) {
+            //The fields are separated by '/' and the first one is preceded by '/'
+            separator = (byte) '/';
+            if (position >= limit || request[position++] != separator) throw new IllegalArgumentException("Missing '/'");
+        }
+
+        int fields = 0; //Fields decoded
+        while (true) {
+            int end = indexOf(separator, position);
+
+            //The username can follow the fields, or replace the optional ones when it isn't a number
+            if (fields == fieldTypes.length() || (trailingUsername && optionalFields && end == limit && !isNumber(position, end))) {
+                if (!trailingUsername || end != limit) throw new IllegalArgumentException("Too many fields");
+                if (end == position) throw new IllegalArgumentException("Empty field");
+
+                username = new String(request, position, end - position, StandardCharsets.UTF_8);
+                break;
+            }
+
+            //The strings can be empty, the handlers reject them like the ones sent with the binary protocol
+            if (end == position && fieldTypes.charAt(fields) == 'i') throw new IllegalArgumentException("Empty field");
+
+            if (opcode == BinaryRequest.RATE && fields == 1) {
+                ints[fields] = decodeVote(position, end);
+            } else if (fieldTypes.charAt(fields) == 'i') {
+                ints[fields] = decodeInt(position, end);
+                if (trailingUsername && optionalFields && end == limit) {
+                    numericField = fields;
+                    numericFieldStart = position;
+                }
+            } else {
+                strings[fields] = new String(request, position, end - position, StandardCharsets.UTF_8);
+            }
+            fields++;
+
+            //The last field ends with the request, the other ones with a separator
+            if (end == limit) break;
+            position = end + 1;
+        }
+
+        if (fields < fieldTypes.length() && !optionalFields) throw new IllegalArgumentException("Missing fields");
+
+        this.ints = ints;
+        this.strings = strings;
+    }
+
+    /**
+     * Decodes the sub-requests of a batch request, one for each line until the end of the request
+     * @param position position of the first sub-request
+     */
+    private void decodeSubRequests(int position) {
+        subRequests = new ArrayList<>();
+        while (position < limit) {
+            int end = indexOf((byte) '\n', position);
+            subRequests.add(new TextRequest(request, position, end));
+            position = end + 1;
+        }
+    }
+
+    /**
+     * Matches the first bytes of a request with the keywords of the commands
+     * @param request bytes that contain the request
+     * @param offset position of the first byte of the request
+     * @param limit position after the last byte of the request
+     * @return the index of the keyword, -1 if no keyword matches
+     */
+    private static int matchKeyword(byte []request, int offset, int limit) {
+        for (int i = 0; i < KEYWORDS.length; i++) {
+            byte []keyword = KEYWORDS[i];
+            //The keyword must be followed by a separator or by the end of the request
+            if (limit - offset < keyword.length) continue;
+
+            byte separator = OPCODES[i] == BinaryRequest.BATCH ? (byte) '\n' : (byte) ' ';
+            if (limit - offset > keyword.length && request[offset + keyword.length] != separator) continue;
+
+            int j = 0;
+            while (j < keyword.length && request[offset + j] == keyword[j]) j++;
+            if (j == keyword.length) return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param opcode opcode of a request
+     * @return true if the fields of the request can be omitted
+     */
+    private static boolean hasOptionalFields(byte opcode) {
+        return opcode == BinaryRequest.LIST_USERS || opcode == BinaryRequest.BLOG || opcode == BinaryRequest.SHOW_FEED;
+    }
+
+    /**
+     * @param opcode opcode of a request
+     * @return true if the request can be sent only by a user logged in, so it can end with the username
+     */
+    private static boolean acceptsUsername(byte opcode) {
+        return switch (opcode) {
+            case BinaryRequest.LOGIN, BinaryRequest.BATCH, BinaryRequest.SUBSCRIBE -> false;
+            default -> true;
+        };
+    }
+
+    /**
+     * Decodes only the opcode of a request
+     * @param request bytes of the request
+     * @return the opcode of the request, 0 if it can't be decoded
+     */
+    public static byte readOpcode(byte []request) {
+        int keyword = matchKeyword(request, 0, request.length);
+        if (keyword == -1 || OPCODES[keyword] == INVALID_SUBCOMMAND) return 0;
+
+        return OPCODES[keyword];
+    }
+
+    /**
+     * @param b byte to search
+     * @param from position where the search starts
+     * @return the position of the first occurrence of the byte, the end of the request if it's not found
+     */
+    private int indexOf(byte b, int from) {
+        for (int i = from; i < limit; i++)
+            if (request[i] == b) return i;
+
+        return limit;
+    }
+
+    /**
+     * Decodes a number written in decimal digits, optionally preceded by its sign
+     * @param start position of the first byte of the number
+     * @param end position after the last byte of the number
+     * @return the number decoded
+     * @throws NumberFormatException if the bytes are not a valid number
+     */
+    private int decodeInt(int start, int end) {
+        if (start == end) throw new NumberFormatException("Empty number");
+
+        boolean negative = request[start] == '-';
+        if (negative || request[start] == '+') start++;
+        if (start == end) throw new NumberFormatException("Missing digits");
+
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = request[i] - '0';
+            if (digit < 0 || digit > 9) throw new NumberFormatException("Invalid digit");
+
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) throw new NumberFormatException("Number too big");
+        }
+
+        if (negative) value = -value;
+        if (value > Integer.MAX_VALUE) throw new NumberFormatException("Number too big");
+
+        return (int) value;
+    }
+
+    /**
+     * @param start position of the first byte of the field
+     * @param end position after the last byte of the field
+     * @return true if the field is a valid number
+     */
+    private boolean isNumber(int start, int end) {
+        try {
+            decodeInt(start, end);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Decodes a vote, only +1 and -1 are valid votes
+     * @param start position of the first byte of the vote
+     * @param end position after the last byte of the vote
+     * @return 1 or -1 for the valid votes, 0 otherwise
+     */
+    private int decodeVote(int start, int end) {
+        if (end - start != 2 || request[start + 1] != '1') return 0;
+        if (request[start] == '+') return 1;
+        if (request[start] == '-') return -1;
+
+        return 0;
+    }
+
+    /**
+     * Converts a keyword to bytes
+     * @param keyword keyword of a command
+     * @return the bytes of the keyword
+     */
+    private static byte[] keyword(String keyword) {
+        return keyword.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the last optional field as the username if it's the username of the user logged in,
+     * since a numeric username sent after the optional fields is decoded as a number
+     * @param sessionUsername username of the user logged in
+     */
+    public void matchUsername(String sessionUsername) {
+        if (username != null || numericField == -1) return;
+
+        String field = new String(request, numericFieldStart, limit - numericFieldStart, StandardCharsets.UTF_8);
+        if (!field.equals(sessionUsername)) return;
+
+        username = field;
+        ints[numericField] = MISSING_FIELD;
+    }
+
+    /**
+     * @return the username sent after the fields, null if it was omitted
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    public boolean isMalformed() {
+        return malformed;
+    }
+
+    public byte getOpcode() {
+        return opcode;
+    }
+
+    public boolean isKnown() {
+        return BinaryRequest.getFieldTypes(opcode) != null;
+    }
+
+    public int getInt(int index) {
+        return ints[index];
+    }
+
+    public String getString(int index) {
+        return strings[index];
+    }
+
+    public int getFieldCount() {
+        return subRequests != null ? subRequests.size() : ints.length;
+    }
+
+    public DecodedRequest getSubRequest(int index) {
+        return subRequests.get(index);
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * This class implements the home timeline of a user: a bounded ring buffer of the posts
+ * of the users followed, kept sorted by post id from the oldest, at the head, to the newest.
+ * The new posts have the highest ids, so they are appended in constant time, overwriting
+ * the oldest entry when the timeline is full. The rare entries that arrive out of order,
+ * the rewins of old posts, are inserted in their position, and the posts of a new user
+ * followed are merged in a single pass.
+ * Each entry holds the id of the post and the id of the user followed that brought it
+ * in the timeline, the author or a rewinner.
+ * The post id is in the high bits of an entry, so the entries are ordered by post id.
+ * The timeline keeps the highest post id dropped for lack of room, its floor: all the entries
+ * newer than the floor are in the timeline, the older ones must be read from the blogs
+ */
+
+import java.util.function.LongPredicate;
+
+public class Timeline {
+    private final long []entries; //Ring buffer of the entries, sorted in ascending order from the head
+    private int head = 0; //Position of the oldest entry
+    private int size = 0;
+    private int floor = -1; //Highest post id whose entries could have been dropped, -1 if none was
+
+    public Timeline(int capacity) {
+        entries = new long[capacity];
+    }
+
+    /**
+     * Encodes an entry of the timeline
+     * @param idPost id of the post
+     * @param via id of the user followed that brought the post in the timeline
+     * @return the entry
+     */
+    public static long entry(int idPost, int via) {
+        return ((long) idPost << 32) | (via & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param entry entry of the timeline
+     * @return the id of the post of the entry
+     */
+    public static int getIdPost(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    /**
+     * @param entry entry of the timeline
+     * @return the id of the user that brought the post in the timeline
+     */
+    public static int getVia(long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * @param index index of an entry from the oldest
+     * @return the position of the entry in the ring buffer
+     */
+    private int position(int index) {
+        int position = head + index;
+        return position >= entries.length ? position - entries.length : position;
+    }
+
+    /**
+     * @param entry entry to search
+     * @return the index of the entry from the oldest, or -(insertion index) - 1 if it isn't in the timeline
+     */
+    private int indexOf(long entry) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long value = entries[position(middle)];
+
+            if (value < entry) low = middle + 1;
+            else if (value > entry) high = middle - 1;
+            else return middle;
+        }
+
+        return -low - 1;
+    }
+
+    /**
+     * Raises the floor of the timeline to an entry dropped
+     * @param entry entry dropped
+     */
+    private void drop(long entry) {
+        floor = Math.max(floor, getIdPost(entry));
+    }
+
+    /**
+     * Adds an entry in order, dropping the oldest post if the timeline is full.
+     * The entries not newer than the floor aren't added, they are read from the blogs
+     * @param entry entry to add
+     */
+    public synchronized void add(long entry) {
+        if (getIdPost(entry) <= floor) return;
+
+        if (size == 0 || entry > entries[position(size - 1)]) {
+            //Newer than all the posts kept: it's appended, overwriting the oldest one if the timeline is full
+            if (size == entries.length) {
+                drop(entries[head]);
+                entries[head] = entry;
+                head = position(1);
+            } else {
+                entries[position(size++)] = entry;
+            }
+            return;
+        }
+
+        //The entry arrived out of order
+        int index = indexOf(entry);
+        if (index >= 0) return; //Already in the timeline
+        index = -index - 1;
+
+        if (size == entries.length) {
+            if (index == 0) { //Older than all the posts kept
+                drop(entry);
+                return;
+            }
+
+            //Drops the oldest entry
+            drop(entries[head]);
+            head = position(1);
+            size--;
+            index--;
+        }
+
+        //Moves the newer entries forward to make room for the entry
+        for (int i = size; i > index; i--)
+            entries[position(i)] = entries[position(i - 1)];
+        entries[position(index)] = entry;
+        size++;
+    }
+
+    /**
+     * Merges some entries with the ones of the timeline in a single pass,
+     * keeping only the newest ones that fit in the timeline.
+     * The entries not newer than the floor aren't added
+     * @param newEntries entries to add, sorted in ascending order
+     */
+    public synchronized void addAll(long []newEntries) {
+        long []merged = new long[entries.length];
+        int count = 0;
+        int i = size - 1;
+        int j = newEntries.length - 1;
+
+        //Skips the new entries not newer than the floor
+        int first = 0;
+        while (first < newEntries.length && getIdPost(newEntries[first]) <= floor) first++;
+
+        //Merges from the newest entries, until the timeline is full
+        while (count < merged.length && (i >= 0 || j >= first)) {
+            long entry;
+            if (j < first || (i >= 0 && entries[position(i)] >= newEntries[j])) {
+                entry = entries[position(i--)];
+                //The entry is both in the timeline and in the new entries
+                if (j >= first && entry == newEntries[j]) j--;
+            } else {
+                entry = newEntries[j--];
+            }
+
+            merged[count++] = entry;
+        }
+
+        //The newest of the entries left out is the highest one
+        if (i >= 0) drop(entries[position(i)]);
+        if (j >= first) drop(newEntries[j]);
+
+        //Copies the entries from the oldest
+        for (int k = 0; k < count; k++)
+            entries[k] = merged[count - 1 - k];
+        head = 0;
+        size = count;
+    }
+
+    /**
+     * Removes the entries that satisfy a condition, keeping the order of the other ones
+     * @param condition condition of the entries to remove
+     */
+    public synchronized void removeIf(LongPredicate condition) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            long entry = entries[position(i)];
+            if (!condition.test(entry)) entries[position(kept++)] = entry;
+        }
+
+        size = kept;
+    }
+
+    /**
+     * @return the highest post id whose entries could have been dropped, -1 if none was
+     */
+    public synchronized int getFloor() {
+        return floor;
+    }
+
+    /**
+     * @param beforeId id of the post from which the entries are read, excluded
+     * @return a copy of the entries of the posts older than beforeId, from the newest
+     */
+    public synchronized long[] before(int beforeId) {
+        //Entries lower than the first entry of beforeId
+        int end = indexOf(entry(beforeId, 0));
+        if (end < 0) end = -end - 1;
+
+        long []copy = new long[end];
+        for (int i = 0; i < end; i++)
+            copy[i] = entries[position(end - 1 - i)];
+
+        return copy;
+    }
+}
@@ -17,14 +17,6 @@ public class Transaction implements BufferedSerialization {
         this.timestamp = timestamp;
     }
 
-    /**
-     * @return transaction in json format
-     */
-    public synchronized String toJson() {
-        Gson gson = new Gson();
-        return gson.toJson(this);
-    }
-
     /**
      * Writes the post in a file in json format
      * @param writer writer used to write the object as json object
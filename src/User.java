@@ -2,32 +2,35 @@
  * This class implements a user
  */
 
-import com.google.gson.Gson;
 import com.google.gson.stream.JsonWriter;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 public class User implements BufferedSerialization {
+    private final int id; //Id of the username in the UserRegistry
     private final String username;
     private final String password;
-    private final String []tag;
-    private final Set<String> follower;
-    private final Set<String> followed;
-    private final Set<Integer> blog;
+    private final int []tag; //Ids of the tags in the TagDictionary
+    private final long tagMask; //Bitmask of the tags that fit in it
+    private final IntHashSet follower; //Ids of the followers
+    private final IntHashSet followed; //Ids of the users followed
+    private final NavigableSet<Integer> blog; //Ids of the posts, from the newest
     private final Wallet wallet;
 
 
     public User(String username, String password, String []tag) {
         if (tag.length > 5) throw new ArrayIndexOutOfBoundsException();
 
-        this.username = username;
+        this.id = UserRegistry.register(username);
+        this.username = UserRegistry.getUsername(id);
         this.password = password;
-        this.tag = tag;
-        this.follower = ConcurrentHashMap.newKeySet();
-        this.followed = ConcurrentHashMap.newKeySet();
-        this.blog = ConcurrentHashMap.newKeySet();
+        this.tag = TagDictionary.register(tag);
+        this.tagMask = TagDictionary.toMask(this.tag);
+        this.follower = new IntHashSet();
+        this.followed = new IntHashSet();
+        this.blog = new ConcurrentSkipListSet<>(Comparator.reverseOrder());
         this.wallet = new Wallet();
     }
 
@@ -36,18 +39,21 @@ public class User implements BufferedSerialization {
      * @param username username of the user
      * @param password password of the user
      * @param tag tag list
-     * @param follower list of follower users
-     * @param followed list of followed users
+     * @param follower ids of the follower users
+     * @param followed ids of the followed users
      * @param blog list of user's post
      * @param wallet user's wallet
      */
-    public User(String username, String password, String []tag, Set<String> follower, Set<String> followed, Set<Integer> blog, Wallet wallet) {
-        this.username = username;
+    public User(String username, String password, String []tag, IntHashSet follower, IntHashSet followed, Set<Integer> blog, Wallet wallet) {
+        this.id = UserRegistry.register(username);
+        this.username = UserRegistry.getUsername(id);
         this.password = password;
-        this.tag = tag;
+        this.tag = TagDictionary.register(tag);
+        this.tagMask = TagDictionary.toMask(this.tag);
         this.follower = follower;
         this.followed = followed;
-        this.blog = blog;
+        this.blog = new ConcurrentSkipListSet<>(Comparator.reverseOrder());
+        this.blog.addAll(blog);
         this.wallet = wallet;
     }
 
@@ -60,6 +66,13 @@ public class User implements BufferedSerialization {
         return this.password.equals(password);
     }
 
+    /**
+     * @return the id of the user
+     */
+    public int getId() {
+        return id;
+    }
+
     /**
      * @return username
      */
@@ -71,16 +84,46 @@ public class User implements BufferedSerialization {
      * @return tag list
      */
     public String[] getTag () {
-        return tag;
+        String []names = new String[tag.length];
+        for (int i = 0; i < tag.length; i++)
+            names[i] = TagDictionary.getTag(tag[i]);
+
+        return names;
     }
 
     /**
-     * @return list of followed user
+     * @return a copy of the ids of the tags
      */
-    public Set<String> getFollowed() {
-        synchronized (followed) {
-            return new HashSet<>(followed);
-        }
+    public int[] getTagIds() {
+        return tag.clone();
+    }
+
+    /**
+     * @return the ids of the followed users
+     */
+    public int[] getFollowed() {
+        return followed.toArray();
+    }
+
+    /**
+     * @return the number of followed users
+     */
+    public int getFollowedCount() {
+        return followed.size();
+    }
+
+    /**
+     * @return the ids of the followers
+     */
+    public int[] getFollowers() {
+        return follower.toArray();
+    }
+
+    /**
+     * @return the number of followers
+     */
+    public int getFollowerCount() {
+        return follower.size();
     }
 
     /**
@@ -91,14 +134,40 @@ public class User implements BufferedSerialization {
     public String[] getCommonTags(User u) {
         List<String> commonTags = new ArrayList<>(5);
 
-        for (String t : tag) {
-            for (String t2 : u.getTag())
-                if (t.equals(t2)) commonTags.add(t);
-        }
+        for (int t : tag)
+            if (u.hasTag(t)) commonTags.add(TagDictionary.getTag(t));
 
         return commonTags.toArray(new String[0]);
     }
 
+    /**
+     * Counts the tags in common between two users: the ones in the masks
+     * with an AND, the ones that don't fit in the masks by id
+     * @param u user
+     * @return the number of tags in common
+     */
+    public int countCommonTags(User u) {
+        int count = Long.bitCount(tagMask & u.tagMask);
+
+        for (int t : tag)
+            if (t >= Long.SIZE && u.hasTag(t)) count++;
+
+        return count;
+    }
+
+    /**
+     * @param tagId id of the tag
+     * @return true iff the user has the tag, false otherwise
+     */
+    private boolean hasTag(int tagId) {
+        if (tagId < Long.SIZE) return (tagMask & (1L << tagId)) != 0;
+
+        for (int t : tag)
+            if (t == tagId) return true;
+
+        return false;
+    }
+
     /**
      * Adds a new post to the user's blog
      * @param postId post id
@@ -126,74 +195,74 @@ public class User implements BufferedSerialization {
 
     /**
      * Adds a user to the followed list
-     * @param followed user to follow
+     * @param followed id of the user to follow
      * @return true iff this user didn't follow that user, false otherwise
      */
-    public boolean addFollowed(String followed) {
+    public boolean addFollowed(int followed) {
         return this.followed.add(followed);
     }
 
     /**
      * Removes a user from the followed list
-     * @param followed user to remove
+     * @param followed id of the user to remove
      * @return true iff this user followed that user, false otherwise
      */
-    public boolean removeFollowed(String followed) {
+    public boolean removeFollowed(int followed) {
         return this.followed.remove(followed);
     }
 
     /**
      * Adds a user to the follower list
-     * @param follower new follower
+     * @param follower id of the new follower
      * @return true iff this user wasn't already followed by the new follower, false otherwise
      */
-    public boolean addFollower(String follower) {
+    public boolean addFollower(int follower) {
         return this.follower.add(follower);
     }
 
     /**
      * Removes a user to the follower list
-     * @param follower follower to remove
+     * @param follower id of the follower to remove
      * @return true iff this user was followed by the follower to remove, false otherwise
      */
-    public boolean removeFollower(String follower) {
+    public boolean removeFollower(int follower) {
         return this.follower.remove(follower);
     }
 
     /**
-     * @param user user to verify
+     * @param user id of the user to verify
      * @return true iff this user follows the user to verify, false otherwise
      */
-    public boolean follows(String user) {
+    public boolean follows(int user) {
         return followed.contains(user);
     }
 
     /**
-     * @return a string which contains the follower list as json format
+     * Writes the follower list in json format
+     * @param writer writer used to write the follower list as json array
      */
-    public String getFollowersAsJson() {
-        Gson gson = new Gson();
-        synchronized (follower) {
-            return gson.toJson(follower);
-        }
+    public void followersToJson(JsonWriter writer) throws IOException {
+        writer.beginArray();
+        for (int f : follower.toArray())
+            writer.value(UserRegistry.getUsername(f));
+        writer.endArray();
     }
 
     /**
-     * @return a set which contains the following list
+     * @return a set which contains the blog
      */
-    public Set<String> getFollowing() {
-        synchronized (followed) {
-            return new HashSet<>(followed);
-        }
+    public Set<Integer> getBlog() {
+        return new HashSet<>(blog);
     }
 
     /**
-     * @return a set which contains the blog
+     * Returns a view of the posts of the blog older than a post, without copying them.
+     * The view reflects the changes made to the blog while it's read
+     * @param beforeId id of the post from which the blog is read, excluded
+     * @return the ids of the posts older than beforeId, from the newest
      */
-    public Set<Integer> getBlog() {
-        synchronized (blog) {
-            return new HashSet<>(blog);
-        }
+    public NavigableSet<Integer> getBlogBefore(int beforeId) {
+        return blog.tailSet(beforeId, false);
     }
 
     /**
@@ -203,16 +272,6 @@ public class User implements BufferedSerialization {
         return wallet;
     }
 
-    /**
-     * @return a string which contains the wallet as json format
-     */
-    public String getWalletAsJson() {
-        Gson gson = new Gson();
-        synchronized (wallet) {
-            return gson.toJson(wallet);
-        }
-    }
-
     /**
      * Writes the user in a file in json format
      * @param writer writer used to write the object as json object
@@ -227,16 +286,16 @@ public class User implements BufferedSerialization {
         writer.name("tag");
         //Writes '['
         writer.beginArray();
-        for (String t : tag)
-            writer.value(t);
+        for (int t : tag)
+            writer.value(TagDictionary.getTag(t));
         //Writes ']'
         writer.endArray();
 
         //Writes the follower list as a json array
-        stringCollectionToJson(writer, "follower", follower);
+        usersToJson(writer, "follower", follower);
 
         //Writes the followed list as json array
-        stringCollectionToJson(writer, "followed", followed);
+        usersToJson(writer, "followed", followed);
 
         //Writes the blog list as json array
         integerCollectionToJson(writer, "blog", blog);
@@ -269,18 +328,18 @@ public class User implements BufferedSerialization {
     }
 
     /**
-     * Writes a string collection to a file in json format
+     * Writes a set of users to a file in json format, as usernames
      * @param writer writer used to write the object as json object
      * @param name name of the field
-     * @param collection collection to serialize
+     * @param userIds ids of the users to serialize
      */
-    private void stringCollectionToJson(JsonWriter writer, String name, Collection<String> collection) throws IOException {
+    private void usersToJson(JsonWriter writer, String name, IntHashSet userIds) throws IOException {
         //Writes the name of the field
         writer.name(name);
         //Writes '['
         writer.beginArray();
-        for (String s : collection) {
-            writer.value(s);
+        for (int userId : userIds.toArray()) {
+            writer.value(UserRegistry.getUsername(userId));
         }
         //Writes ']'
         writer.endArray();
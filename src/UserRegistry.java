@@ -0,0 +1,58 @@
+/**
+ * This class implements the registry that assigns a dense int id to each username.
+ * The data model stores the ids instead of the usernames, so the sets of users hold
+ * primitive ints and the usernames are resolved only when they are written in json.
+ * The ids aren't persisted: they are assigned again when the state is recovered
+ */
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class UserRegistry {
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String []usernames = new String[1024]; //Username of each id
+    private static int nextId = 0;
+
+    /**
+     * Assigns an id to a username, if it doesn't have one yet
+     * @param username username to register
+     * @return the id of the username
+     */
+    public static int register(String username) {
+        Integer id = ids.get(username);
+        if (id != null) return id;
+
+        synchronized (UserRegistry.class) {
+            id = ids.get(username);
+            if (id != null) return id;
+
+            String []names = usernames;
+            if (nextId == names.length) names = Arrays.copyOf(names, names.length * 2);
+            names[nextId] = username;
+            //Publishes the username before its id can be read from the map
+            usernames = names;
+
+            ids.put(username, nextId);
+            return nextId++;
+        }
+    }
+
+    /**
+     * @param username username to search
+     * @return the id of the username, -1 if it's not registered
+     */
+    public static int getId(String username) {
+        Integer id = ids.get(username);
+
+        return id != null ? id : -1;
+    }
+
+    /**
+     * @param id id of a registered username
+     * @return the username with that id
+     */
+    public static String getUsername(int id) {
+        return usernames[id];
+    }
+}
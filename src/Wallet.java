@@ -4,9 +4,7 @@
 
 import com.google.gson.stream.JsonWriter;
 
-import java.io.*;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -54,30 +52,14 @@ public class Wallet implements BufferedSerialization {
 
     /**
      * Converts the amount of wincoin in the wallet in BitCoin
-     * @return the amount of wincoin in the wallet in BTC
+     * @param conversionRate conversion rate from wincoin to BitCoin, -1 if it's not available
+     * @return the amount of wincoin in the wallet in BTC, -1 if the conversion rate is not available
      */
-    public double wincoinToBTC() {
-        try {
-            //Creates the URL to get conversion rate
-            URL url = new URL("https://www.random.org/decimal-fractions/?num=1&dec=10&col=2&format=plain&rnd=new");
-            //Opens the reader stream
-            BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream()));
-            //Reads the conversion rate from the stream
-            String line = reader.readLine();
-            if (line == null) throw new IOException("No content received from random.org");
+    public synchronized double wincoinToBTC(double conversionRate) {
+        if (conversionRate < 0) return -1;
 
-            double conversionRate = Double.parseDouble(line);
-            synchronized (this) {
-                //Calculates the BTC amount
-                return wincoin * conversionRate;
-            }
-        } catch (MalformedURLException e) {
-            System.err.println("Error with the URL: (" + e.getMessage() + ")");
-            return -1;
-        } catch (IOException e) {
-            System.err.println("Error while communicating with random.org: (" + e.getMessage() + ")");
-            return -1;
-        }
+        //Calculates the BTC amount
+        return wincoin * conversionRate;
     }
 
     /**
@@ -12,6 +12,7 @@ import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.rmi.NoSuchObjectException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
@@ -19,8 +20,13 @@ import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
 
 public class Winsome {
     private final String serverIP;
@@ -28,9 +34,35 @@ public class Winsome {
 
     private SocketChannel socketChannel = null;
     private String currentLoggedUser = null;
-    private final ByteBuffer buffer;
+    //Response code sent when the server is overloaded and drops the request
+    private static final int SERVER_BUSY = -3;
 
-    private List<String> followers;
+    //Maximum number of pipelined requests waiting for a response
+    private static final int PIPELINE_WINDOW = 32;
+    //Sent by the server at the start of a pushed notification, instead of a response
+    private static final int PUSH_FRAME = Integer.MIN_VALUE;
+    //Number of posts of a page of the blog or of the feed when the user doesn't choose it
+    private static final String DEFAULT_PAGE_SIZE = "20";
+
+    private final ByteBuffer requestBuffer;
+    private final ByteBuffer buffer; //Buffer of the responses, kept in read mode between the responses
+
+    //Identifier of the next request sent with the binary protocol
+    private int nextRequestId = 0;
+    //Identifiers of the requests sent and waiting for a response, in order
+    private final Queue<Integer> pendingRequests = new ArrayDeque<>();
+
+    //True if the client tries to use the binary protocol
+    private final boolean preferBinaryProtocol;
+    //True if the server accepted the binary protocol on the current connection
+    private boolean binaryProtocol = false;
+
+    //True if the client asks the server to push the notifications of the followers on the connection
+    private final boolean preferPushNotifications;
+    //True if the server pushes the notifications of the followers on the current connection
+    private boolean pushNotifications = false;
+
+    private Set<String> followers; //Guarded by its own monitor, it's updated by the notifications and by getFollowers
 
     private MulticastSocket multicastSocket;
     private Thread multicastThread;
@@ -40,9 +72,12 @@ public class Winsome {
     private NotifyNewFollower followerCallback = null;
     private final RegisterInterface register;
 
-    public Winsome(String serverIP, int tcpPort, String registryHost, int registryPort, String registerServiceName, String callbackServiceName, int bufferSize) throws RemoteException, NotBoundException {
+    public Winsome(String serverIP, int tcpPort, String registryHost, int registryPort, String registerServiceName, String callbackServiceName, int bufferSize, boolean preferBinaryProtocol, boolean preferPushNotifications) throws RemoteException, NotBoundException {
         this.serverIP = serverIP;
         this.tcpPort = tcpPort;
+        this.preferBinaryProtocol = preferBinaryProtocol;
+        this.preferPushNotifications = preferPushNotifications;
+        requestBuffer = ByteBuffer.allocate(bufferSize);
         buffer = ByteBuffer.allocate(bufferSize);
 
         Registry registry = LocateRegistry.getRegistry(registryHost, registryPort);
@@ -55,37 +90,61 @@ public class Winsome {
      */
     private void writeToChannel() throws IOException {
         //Sets the buffer ready for writing to the channel
-        buffer.flip();
+        requestBuffer.flip();
 
         //Writes to the channel
-        while(buffer.hasRemaining()) socketChannel.write(buffer);
+        while(requestBuffer.hasRemaining()) socketChannel.write(requestBuffer);
+    }
+
+    /**
+     * Sends the request to the server with the protocol negotiated
+     * @param command request in textual form
+     * @param opcode opcode of the request in the binary protocol
+     * @param fields fields of the request in the binary protocol
+     */
+    private void sendRequest(String command, byte opcode, String ...fields) throws IOException {
+        if (!binaryProtocol) {
+            sendRequest(command.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        //Assigns an identifier to the request to match its response
+        int requestId = nextRequestId++;
+
+        byte []requestBytes;
+        try {
+            requestBytes = BinaryRequest.encode(requestId, opcode, fields);
+        } catch (NumberFormatException e) {
+            //Sends the request without fields, so the server answers as a malformed request
+            requestBytes = BinaryRequest.encodeWithoutFields(requestId, opcode);
+        }
+
+        sendRequest(requestBytes);
+        pendingRequests.add(requestId);
     }
 
     /**
      * Sends the request to the server
-     * @param command request to send to the server
+     * @param requestBytes bytes of the request to send to the server
      */
-    private void sendRequest(String command) throws IOException{
+    private void sendRequest(byte []requestBytes) throws IOException{
         if (socketChannel == null) {
             System.out.println("< No user is logged in");
             return;
         }
 
         //Clears the buffer
-        buffer.clear();
-
-        //Converts the request to bytes
-        byte []requestBytes = command.getBytes();
+        requestBuffer.clear();
 
         //Puts the command length in the buffer
-        buffer.putInt(requestBytes.length);
+        requestBuffer.putInt(requestBytes.length);
 
         //Calculates the buffer remaining capacity
-        int bufferCapacity = buffer.capacity() - buffer.position();
+        int bufferCapacity = requestBuffer.capacity() - requestBuffer.position();
 
         if (requestBytes.length <= bufferCapacity) { //The request fits all in the buffer
             //Puts the command
-            buffer.put(requestBytes);
+            requestBuffer.put(requestBytes);
 
             writeToChannel();
         } else { //The request needs to be sent fragmented
@@ -93,11 +152,11 @@ public class Winsome {
 
             while (startingIndex < requestBytes.length) {
                 //Writes the maximum bytes that fits in the buffer
-                buffer.put(requestBytes, startingIndex, bufferCapacity);
+                requestBuffer.put(requestBytes, startingIndex, bufferCapacity);
 
                 writeToChannel();
                 //Clears the buffer
-                buffer.clear();
+                requestBuffer.clear();
 
                 //Calculates the next start index to write
                 startingIndex += bufferCapacity;
@@ -105,7 +164,7 @@ public class Winsome {
                 //Calculates how many bytes have to write
                 if (bufferCapacity < requestBytes.length - startingIndex)
                     //Needs to fill the whole buffer
-                    bufferCapacity = buffer.capacity();
+                    bufferCapacity = requestBuffer.capacity();
                 else //Needs to write only a part of the buffer
                     bufferCapacity = requestBytes.length - startingIndex;
             }
@@ -114,14 +173,105 @@ public class Winsome {
     }
 
     /**
-     * Reads the response from the server
+     * Reads from the channel until the buffer contains at least the specified number of bytes.
+     * The bytes not read yet are kept, since they can belong to the next responses
+     * @param bytes minimum number of bytes to have in the buffer
+     */
+    private void readResponse(int bytes) throws IOException {
+        while (buffer.remaining() < bytes) {
+            //Keeps the bytes not read yet and prepares the buffer to be written
+            buffer.compact();
+            //Reads the response
+            int read = socketChannel.read(buffer);
+            //Sets the buffer ready to be read
+            buffer.flip();
+
+            if (read == -1) throw new IOException("Connection closed by the server");
+        }
+    }
+
+    /**
+     * Reads the response code of the oldest request waiting for a response.
+     * Notifies the user if the server was too busy to serve the request
+     * @return the response code
+     */
+    private int readResponseCode() throws IOException {
+        //The notifications pushed by the server can arrive before the response
+        readPushedNotifications();
+
+        int responseCode;
+        if (!binaryProtocol) {
+            readResponse(Integer.BYTES);
+            responseCode = buffer.getInt();
+        } else {
+            //With the binary protocol the response code is preceded by the request identifier
+            readResponse(2 * Integer.BYTES);
+            int requestId = buffer.getInt();
+            Integer expectedId = pendingRequests.poll();
+            if (expectedId == null || requestId != expectedId)
+                throw new IOException("Unexpected response for the request " + requestId);
+
+            responseCode = buffer.getInt();
+        }
+
+        if (responseCode == SERVER_BUSY) System.err.println("< Server busy, please try again later");
+
+        return responseCode;
+    }
+
+    /**
+     * Reads the notifications pushed by the server until the start of the next response
+     */
+    private void readPushedNotifications() throws IOException {
+        while (true) {
+            readResponse(Integer.BYTES);
+            if (buffer.getInt(buffer.position()) != PUSH_FRAME) return;
+
+            buffer.getInt(); //Skips PUSH_FRAME
+            updateFollowers(extractResponse());
+        }
+    }
+
+    /**
+     * Reads the notifications already pushed by the server without waiting for new bytes.
+     * It's used when no response is expected
+     */
+    private void pollPushedNotifications() throws IOException {
+        //Reads the bytes already arrived
+        socketChannel.configureBlocking(false);
+        try {
+            buffer.compact();
+            int read = socketChannel.read(buffer);
+            buffer.flip();
+
+            if (read == -1) throw new IOException("Connection closed by the server");
+        } finally {
+            socketChannel.configureBlocking(true);
+        }
+
+        //Applies the notifications arrived completely
+        while (buffer.remaining() >= 2 * Integer.BYTES && buffer.getInt(buffer.position()) == PUSH_FRAME
+                && buffer.remaining() - 2 * Integer.BYTES >= buffer.getInt(buffer.position() + Integer.BYTES)) {
+            buffer.getInt(); //Skips PUSH_FRAME
+            updateFollowers(extractResponse());
+        }
+    }
+
+    /**
+     * Updates the followers list with a notification pushed by the server
+     * @param notification json notification of a new or a lost follower
      */
-    private void readResponse() throws IOException {
-        buffer.clear();
-        //Reads the response
-        socketChannel.read(buffer);
-        //Sets the buffer ready to be read
-        buffer.flip();
+    private void updateFollowers(String notification) {
+        JsonObject jsonObject = JsonParser.parseString(notification).getAsJsonObject();
+        String follower = jsonObject.get("follower").getAsString();
+
+        synchronized (followers) {
+            if (jsonObject.get("followed").getAsBoolean()) {
+                followers.add(follower);
+            } else {
+                followers.remove(follower);
+            }
+        }
     }
 
     /**
@@ -130,55 +280,65 @@ public class Winsome {
      */
     private String extractResponse() throws IOException {
         //Reads the response length
+        readResponse(Integer.BYTES);
         int strLen = buffer.getInt();
         int totalRead = 0;
-        StringBuilder response = new StringBuilder();
+        byte[] response = new byte[strLen];
 
         //Until the response is entirely read
         while (totalRead < strLen) {
-            byte[] strByte = new byte[buffer.limit() - buffer.position()];
+            //Refills the buffer reading from the channel
+            readResponse(1);
+
+            int toRead = Math.min(buffer.remaining(), strLen - totalRead);
             //Puts the bytes from the buffer to the array
-            buffer.get(strByte);
-            //Appends the response
-            response.append(new String(strByte));
+            buffer.get(response, totalRead, toRead);
 
             //Updates the number of bytes read
-            totalRead += strByte.length;
-
-            if (totalRead == strLen) break;
-
-            //Refills the buffer reading from the channel
-            readResponse();
+            totalRead += toRead;
         }
-        return response.toString();
+        //The response is encoded as UTF-8
+        return new String(response, StandardCharsets.UTF_8);
     }
 
     /**
-     * Adds a vote to a post
-     * @param idPost post id of the post to rate
+     * Adds a vote to some posts. The requests are pipelined on the connection,
+     * so the client doesn't wait a response before sending the next request
+     * @param idPosts post ids of the posts to rate
      * @param vote vote (must be "+1" or "-1")
      */
-    public void ratePost(String idPost, String vote) {
+    public void ratePost(List<String> idPosts, String vote) {
         if (socketChannel == null || currentLoggedUser == null) {
             System.err.println("< There is no user logged in");
             return;
         }
 
-        //Builds the request
-        String request = "rate " + idPost + " " + vote + " " + currentLoggedUser;
         try {
-            sendRequest(request);
-            readResponse();
-            //Gets the response code
-            int responseId = buffer.getInt();
-
-            if (responseId == 0) System.out.println("< Post rated correctly");
-            if (responseId == 1) System.err.println("< There is no user logged in");
-            if (responseId == -1 || responseId == 2) System.err.println("< Unknown command. Usage: rate idPost rate (rate must be '+1' or '-1')");
-            if (responseId == 3) System.err.println("< Post doesn't exists");
-            if (responseId == 4) System.err.println("< You can't rate your own post");
-            if (responseId == 5) System.err.println("< You've already rated this post");
+            int sent = 0;
+            int received = 0;
+            while (received < idPosts.size()) {
+                //Sends the requests without waiting the responses, up to PIPELINE_WINDOW requests in flight
+                while (sent < idPosts.size() && sent - received < PIPELINE_WINDOW) {
+                    String idPost = idPosts.get(sent++);
+
+                    //Builds the request
+                    String request = "rate " + idPost + " " + vote;
+                    sendRequest(request, BinaryRequest.RATE, idPost, vote);
+                }
 
+                //Gets the response code, the responses arrive in the same order of the requests
+                int responseId = readResponseCode();
+                String idPost = idPosts.get(received++);
+                //Prefixes the post id to the messages only if there are more posts
+                String messagePrefix = idPosts.size() > 1 ? "< [" + idPost + "] " : "< ";
+
+                if (responseId == 0) System.out.println(messagePrefix + "Post rated correctly");
+                if (responseId == 1) System.err.println(messagePrefix + "There is no user logged in");
+                if (responseId == -1 || responseId == 2) System.err.println(messagePrefix + "Unknown command. Usage: rate idPost rate (rate must be '+1' or '-1')");
+                if (responseId == 3) System.err.println(messagePrefix + "Post doesn't exists");
+                if (responseId == 4) System.err.println(messagePrefix + "You can't rate your own post");
+                if (responseId == 5) System.err.println(messagePrefix + "You've already rated this post");
+            }
         } catch (IOException e) {
             System.err.println("Error while rating the post (" + e.getMessage() + ")");
         }
@@ -195,12 +355,11 @@ public class Winsome {
         }
 
         //Builds the request
-        String request = "follow " + idUser + " " + currentLoggedUser;
+        String request = "follow " + idUser;
         try {
-            sendRequest(request);
-            readResponse();
+            sendRequest(request, BinaryRequest.FOLLOW, idUser);
             //Gets the response code
-            int responseId = buffer.getInt();
+            int responseId = readResponseCode();
 
             if (responseId == 0) System.out.println("< " + idUser + " followed");
             if (responseId == 1) System.err.println("< There is no user logged in");
@@ -224,12 +383,11 @@ public class Winsome {
         }
 
         //Builds the request
-        String request = "unfollow " + idUser + " " + currentLoggedUser;
+        String request = "unfollow " + idUser;
         try {
-            sendRequest(request);
-            readResponse();
+            sendRequest(request, BinaryRequest.UNFOLLOW, idUser);
             //Gets the response code
-            int responseId = buffer.getInt();
+            int responseId = readResponseCode();
 
             if (responseId == 0) System.out.println("< " + idUser + " unfollowed");
             if (responseId == 1) System.err.println("< There is no user logged in");
@@ -251,6 +409,15 @@ public class Winsome {
             return;
         }
 
+        //Applies the notifications pushed by the server in the meantime
+        if (pushNotifications) {
+            try {
+                pollPushedNotifications();
+            } catch (IOException e) {
+                System.err.println("Error while reading the notifications (" + e.getMessage() + ")");
+            }
+        }
+
         System.out.println("< Followers:");
         synchronized (followers) {
             if (followers.isEmpty()) System.out.println("< There are no followers");
@@ -270,12 +437,11 @@ public class Winsome {
         }
 
         //Builds the request
-        String request = "logout " + currentLoggedUser;
+        String request = "logout";
         try {
-            sendRequest(request);
-            readResponse();
+            sendRequest(request, BinaryRequest.LOGOUT);
             //Gets the response code
-            int responseId = buffer.getInt();
+            int responseId = readResponseCode();
 
             if (responseId == 0) {
                 System.out.println("< " + currentLoggedUser + " logged out");
@@ -289,16 +455,19 @@ public class Winsome {
 
                 //Resets the followers list
                 followers = null;
-                //Unregisters from the callback
-                serverCallbackHandler.unregisterForCallback(currentLoggedUser);
+                if (followerCallback != null) {
+                    //Unregisters from the callback
+                    serverCallbackHandler.unregisterForCallback(currentLoggedUser);
+
+                    //Disables the RMI callback to receive followers notification
+                    UnicastRemoteObject.unexportObject(followerCallback, true);
+                    followerCallback = null;
+                }
+                pushNotifications = false;
 
                 //Resets the user logged
                 currentLoggedUser = null;
-
-                //Disables the RMI callback to receive followers notification
-                UnicastRemoteObject.unexportObject(followerCallback, true);
-                followerCallback = null;
-            } else {
+            } else if (responseId != SERVER_BUSY) {
                 System.err.println("< " + currentLoggedUser + " is not logged in");
             }
 
@@ -321,12 +490,29 @@ public class Winsome {
         try {
             //Connects to the server
             socketChannel = SocketChannel.open(new InetSocketAddress(serverIP, tcpPort));
+            //Discards the bytes left by the previous connection
+            buffer.clear().flip();
+            pendingRequests.clear();
+
+            //Negotiates the binary protocol, the servers that don't support it answer as an unknown command
+            binaryProtocol = false;
+            if (preferBinaryProtocol) {
+                sendRequest(BinaryRequest.NEGOTIATION_REQUEST.getBytes(StandardCharsets.UTF_8));
+                int negotiationCode = readResponseCode();
+
+                if (negotiationCode == SERVER_BUSY) {
+                    //Close the connection with the server
+                    socketChannel.close();
+                    socketChannel = null;
+                    return;
+                }
+                binaryProtocol = negotiationCode == 0;
+            }
 
             //Builds and sends request to the server
-            sendRequest("login " + username + " " + password);
-            readResponse();
+            sendRequest("login " + username + " " + password, BinaryRequest.LOGIN, username, password);
             //Reads the response code
-            int responseId = buffer.getInt();
+            int responseId = readResponseCode();
 
             if (responseId == 0) {
                 System.out.println("< " + username + " logged in");
@@ -346,20 +532,24 @@ public class Winsome {
                 multicastThread = new Thread(new NotifyHandler(multicastIP, multicastSocket));
                 multicastThread.start();
 
-                followers = new ArrayList<>();
-                followerCallback = new NotifyNewFollowerService(followers);
-                //Exports the object and gets the stub
-                callbackStub = (NotifyNewFollower) UnicastRemoteObject.exportObject(followerCallback, 0);
-                //Registers for callback
-                serverCallbackHandler.registerForCallback(currentLoggedUser, callbackStub);
+                followers = new LinkedHashSet<>();
+                //Asks the server to push the notifications of the followers on the connection
+                pushNotifications = preferPushNotifications && subscribe();
+                if (!pushNotifications) { //Falls back to the RMI callbacks
+                    followerCallback = new NotifyNewFollowerService(followers);
+                    //Exports the object and gets the stub
+                    callbackStub = (NotifyNewFollower) UnicastRemoteObject.exportObject(followerCallback, 0);
+                    //Registers for callback
+                    serverCallbackHandler.registerForCallback(currentLoggedUser, callbackStub);
+                }
 
                 //Retrieves the followers list from the server
-                getFollowers(username);
+                getFollowers();
             }
             if (responseId == 1) System.err.println("< Username or password not correct");
             if (responseId == 2) System.err.println("< Already logged on another terminal");
 
-            if (responseId == 1 || responseId == 2) {
+            if (responseId == 1 || responseId == 2 || responseId == SERVER_BUSY) {
                 //Close the connection with the server
                 socketChannel.close();
                 socketChannel = null;
@@ -370,25 +560,36 @@ public class Winsome {
     }
 
     /**
-     * Retreives the followers list from the server
-     * @param username the user who wants his own follower list
+     * Asks the server to push the notifications of the followers on the connection
+     * @return true if the server will push the notifications
+     */
+    private boolean subscribe() throws IOException {
+        sendRequest("subscribe", BinaryRequest.SUBSCRIBE);
+
+        //The servers that don't support the push answer as an unknown command
+        return readResponseCode() == 0;
+    }
+
+    /**
+     * Retreives the followers list of the user logged in from the server
      */
-    private void getFollowers(String username) {
+    private void getFollowers() {
         try {
             //Builds and sends the request
-            sendRequest("getFollowers " + username);
-            readResponse();
+            sendRequest("getFollowers", BinaryRequest.GET_FOLLOWERS);
 
             //Reads the response code
-            buffer.getInt();
+            if (readResponseCode() != 0) return;
             //Reads the response
             String userFollowers = extractResponse();
 
             //Checks if the user doesn't have followers
             if (userFollowers.equals("[]")) return;
 
-            //Gets followers from json string
-            getUserFromJson(followers, userFollowers);
+            //Gets followers from json string, the notifications received meanwhile can update the same set
+            synchronized (followers) {
+                getUserFromJson(followers, userFollowers);
+            }
 
         } catch (IOException e) {
             System.err.println("Error while recovering followers (" + e.getMessage() + ")");
@@ -396,24 +597,25 @@ public class Winsome {
     }
 
     /**
-     * Puts the json entry in the list
-     * @param list list where the users will be added
+     * Puts the json entry in the collection
+     * @param list collection where the users will be added
      * @param jsonString json string which contains the users
      */
-    public void getUserFromJson(List<String> list, String jsonString) {
+    public void getUserFromJson(Collection<String> list, String jsonString) {
         //Parses the string to a json array
         JsonArray jsonArray = JsonParser.parseString(jsonString).getAsJsonArray();
 
-        //Inserts every json element, as a string, in the list
+        //Inserts every json element, as a string, in the collection
         for (JsonElement jsonElement : jsonArray)
             list.add(jsonElement.getAsString());
     }
 
     /**
      * Prints to the standard output the list of users which have at least one common tag
-     * with the user
+     * with the user, the ones with more tags in common first
+     * @param limit maximum number of users to print, all of them if it's null
      */
-    public void listUsers() {
+    public void listUsers(String limit) {
         if (socketChannel == null || currentLoggedUser == null) {
             System.err.println("< There is no user logged");
             return;
@@ -421,13 +623,13 @@ public class Winsome {
 
         try {
             //Builds and sends the request
-            sendRequest( "list users " + currentLoggedUser);
-            readResponse();
+            if (limit == null) sendRequest("list users", BinaryRequest.LIST_USERS, "-1");
+            else sendRequest("list users " + limit, BinaryRequest.LIST_USERS, limit);
 
             //Reads the response code
-            int responseId = buffer.getInt();
+            int responseId = readResponseCode();
             if (responseId == -1) {
-                System.err.println("< Invalid command. Usage: list users");
+                System.err.println("< Invalid command. Usage: list users [limit]");
                 return;
             }
 
@@ -477,13 +679,12 @@ public class Winsome {
         }
 
         //Builds the request
-        String request = "post /" + title + "/" + content + "/" + currentLoggedUser;
+        String request = "post /" + title + "/" + content;
         try {
-            sendRequest(request);
-            readResponse();
+            sendRequest(request, BinaryRequest.POST, title, content);
 
             //Reads the response code
-            int responseId = buffer.getInt();
+            int responseId = readResponseCode();
             if (responseId == 0) System.out.println("< Post created correctly");
             if (responseId == 1) System.err.println("< There is no user logged in");
             if (responseId == 2) System.err.println("< Invalid post arguments. Title must have less then 20 characters, the content mush have less then 500 characters");
@@ -505,12 +706,11 @@ public class Winsome {
 
         try {
             //Builds the request
-            String request = "delete " + idPost + " " + currentLoggedUser;
-            sendRequest(request);
-            readResponse();
+            String request = "delete " + idPost;
+            sendRequest(request, BinaryRequest.DELETE, idPost);
 
             //Reads the response code
-            int responseId = buffer.getInt();
+            int responseId = readResponseCode();
             if (responseId == -1) System.out.println("< Invalid request. Usage: delete <idPost>");
             if (responseId == 0) System.out.println("< Post deleted correctly");
             if (responseId == 1) System.err.println("< There is no user logged");
@@ -532,12 +732,11 @@ public class Winsome {
 
         try {
             //Builds the request
-            String request = "list following " + currentLoggedUser;
-            sendRequest(request);
-            readResponse();
+            String request = "list following";
+            sendRequest(request, BinaryRequest.LIST_FOLLOWING);
 
             //Reads the response code
-            int responseId = buffer.getInt();
+            int responseId = readResponseCode();
             if (responseId == 0) {
                 //Gets the response as a string
                 String userFollowing = extractResponse();
@@ -569,41 +768,28 @@ public class Winsome {
     }
 
     /**
-     * Prints to the standard output the list of posts the user has created
+     * Prints to the standard output a page of the list of posts the user has created, from the newest
+     * @param limit maximum number of posts to print, the default one if it's null
+     * @param beforeId id of the post from which the page starts, excluded. If it's null the page starts from the newest post
      */
-    public void viewBlog() {
+    public void viewBlog(String limit, String beforeId) {
         if (socketChannel == null || currentLoggedUser == null) {
             System.err.println("< There is no user logged");
             return;
         }
 
+        if (limit == null) limit = DEFAULT_PAGE_SIZE;
+        if (beforeId == null) beforeId = "-1";
+
         try {
             //Builds the request
-            String request = "blog " + currentLoggedUser;
-            sendRequest(request);
-            readResponse();
+            String request = "blog " + limit + " " + beforeId;
+            sendRequest(request, BinaryRequest.BLOG, limit, beforeId);
 
             //Reads the response code
-            int responseId = buffer.getInt();
-            if (responseId == 0) {
-                //Gets the response as a string
-                String blogPosts = extractResponse();
-
-                System.out.printf("< %-4s %s %-14s %s %10s\n", "Id", "|", "Author", "|", "Title");
-                System.out.println("< ---------------------------------------------------------");
-
-                //Parses the string as a json array
-                JsonArray jsonArray = JsonParser.parseString(blogPosts).getAsJsonArray();
-                //Prints all the post
-                for (JsonElement jsonElement : jsonArray) {
-                    JsonObject jsonEntry = JsonParser.parseString(jsonElement.toString()).getAsJsonObject();
-                    int idPost = jsonEntry.get("idPost").getAsInt();
-                    String author = jsonEntry.get("author").getAsString();
-                    String postTitle = jsonEntry.get("postTitle").getAsString();
-
-                    System.out.printf("< %-4d %s %-14s %s %10s\n", idPost, "|", author, "|", postTitle);
-                }
-            }
+            int responseId = readResponseCode();
+            if (responseId == -1) System.err.println("< Invalid request. Usage: blog [limit] [beforeId]");
+            if (responseId == 0) printPostPage(extractResponse(), "blog " + limit);
             if (responseId == 1) System.err.println("< There is no user logged");
         } catch (IOException e) {
             System.err.println("< Error during comunication with server (" + e.getMessage() + ")");
@@ -622,12 +808,11 @@ public class Winsome {
 
         try {
             //Builds the request
-            String request = "show post " + idPost + " " + currentLoggedUser;
-            sendRequest(request);
-            readResponse();
+            String request = "show post " + idPost;
+            sendRequest(request, BinaryRequest.SHOW_POST, idPost);
 
             //Reads the response code
-            int responseId = buffer.getInt();
+            int responseId = readResponseCode();
             if (responseId == -1) System.err.println("< Invalid request. Usage: show post <idPost>");
             if (responseId == 0) {
                 //Gets the response as a string
@@ -667,49 +852,62 @@ public class Winsome {
     }
 
     /**
-     * Prints to the standard output the post list created by the users
-     * followed by the user currently logged in
+     * Prints to the standard output a page of the post list created by the users
+     * followed by the user currently logged in, from the newest
+     * @param limit maximum number of posts to print, the default one if it's null
+     * @param beforeId id of the post from which the page starts, excluded. If it's null the page starts from the newest post
      */
-    public void showFeed() {
+    public void showFeed(String limit, String beforeId) {
         if (socketChannel == null || currentLoggedUser == null) {
             System.err.println("< There is no user logged");
             return;
         }
 
+        if (limit == null) limit = DEFAULT_PAGE_SIZE;
+        if (beforeId == null) beforeId = "-1";
+
         try {
             //Builds the request
-            String request = "show feed " + currentLoggedUser;
-            sendRequest(request);
-            readResponse();
+            String request = "show feed " + limit + " " + beforeId;
+            sendRequest(request, BinaryRequest.SHOW_FEED, limit, beforeId);
 
             //Reads the response code
-            int responseId = buffer.getInt();
-            if (responseId == 0) {
-                String blogPosts = extractResponse();
-
-                System.out.printf("< %-4s %s %-14s %s %10s\n", "Id", "|", "Author", "|", "Title");
-                System.out.println("< ---------------------------------------------------------");
-
-                //Parses the string as a json array
-                JsonArray jsonArray = JsonParser.parseString(blogPosts).getAsJsonArray();
-                //Prints all the posts
-                for (JsonElement jsonElement : jsonArray) {
-                    //Parses the json element as an entry
-                    JsonObject jsonEntry = JsonParser.parseString(jsonElement.toString()).getAsJsonObject();
-
-                    int idPost = jsonEntry.get("idPost").getAsInt();
-                    String author = jsonEntry.get("author").getAsString();
-                    String postTitle = jsonEntry.get("postTitle").getAsString();
-
-                    System.out.printf("< %-4d %s %-14s %s %10s\n", idPost, "|", author, "|", postTitle);
-                }
-            }
+            int responseId = readResponseCode();
+            if (responseId == -1) System.err.println("< Invalid request. Usage: show feed [limit] [beforeId]");
+            if (responseId == 0) printPostPage(extractResponse(), "show feed " + limit);
             if (responseId == 1) System.err.println("< There is no user logged");
         } catch (IOException e) {
             System.err.println("< Error during comunication with server (" + e.getMessage() + ")");
         }
     }
 
+    /**
+     * Prints to the standard output a page of posts and how to read the next one
+     * @param page page of posts in json
+     * @param command command that reads the next page, without its beforeId
+     */
+    private static void printPostPage(String page, String command) {
+        System.out.printf("< %-4s %s %-14s %s %10s\n", "Id", "|", "Author", "|", "Title");
+        System.out.println("< ---------------------------------------------------------");
+
+        //Parses the string as a json object
+        JsonObject jsonPage = JsonParser.parseString(page).getAsJsonObject();
+        //Prints all the posts
+        for (JsonElement jsonElement : jsonPage.get("posts").getAsJsonArray()) {
+            //Parses the json element as an entry
+            JsonObject jsonEntry = jsonElement.getAsJsonObject();
+
+            int idPost = jsonEntry.get("idPost").getAsInt();
+            String author = jsonEntry.get("author").getAsString();
+            String postTitle = jsonEntry.get("postTitle").getAsString();
+
+            System.out.printf("< %-4d %s %-14s %s %10s\n", idPost, "|", author, "|", postTitle);
+        }
+
+        int cursor = jsonPage.get("cursor").getAsInt();
+        if (cursor != -1) System.out.println("< More posts: " + command + " " + cursor);
+    }
+
     /**
      * Rewins the post specified
      * @param idPost post id of the post to rewin
@@ -722,12 +920,11 @@ public class Winsome {
 
         try {
             //Builds the request
-            String request = "rewin " + idPost + " " + currentLoggedUser;
-            sendRequest(request);
-            readResponse();
+            String request = "rewin " + idPost;
+            sendRequest(request, BinaryRequest.REWIN, idPost);
 
             //Reads the response code
-            int responseId = buffer.getInt();
+            int responseId = readResponseCode();
             if (responseId == -1) System.out.println("< Invalid request. Usage: rewin <idPost>");
             if (responseId == 0) System.out.println("< Post rewinned correctly");
             if (responseId == 1) System.err.println("< There is no user logged");
@@ -751,12 +948,11 @@ public class Winsome {
 
         try {
             //Builds the request
-            String request = "comment /" + idPost + "/" + comment + "/" + currentLoggedUser;
-            sendRequest(request);
-            readResponse();
+            String request = "comment /" + idPost + "/" + comment;
+            sendRequest(request, BinaryRequest.COMMENT, idPost, comment);
 
             //Reads the response code
-            int responseId = buffer.getInt();
+            int responseId = readResponseCode();
             if (responseId == -1) System.out.println("< Invalid request. Usage: comment <idPost> \"<comment>\"");
             if (responseId == 0) System.out.println("< Comment added correctly");
             if (responseId == 1) System.err.println("< There is no user logged");
@@ -780,12 +976,11 @@ public class Winsome {
 
         try {
             //Builds the request
-            String request = "wallet " + currentLoggedUser;
-            sendRequest(request);
-            readResponse();
+            String request = "wallet";
+            sendRequest(request, BinaryRequest.WALLET);
 
             //Reads the response code
-            int responseId = buffer.getInt();
+            int responseId = readResponseCode();
             if (responseId == -1) System.err.println("< Invalid command. Use 'wallet' or 'wallet btc'");
             if (responseId == 0) {
                 //Gets the response as a stirng
@@ -832,12 +1027,11 @@ public class Winsome {
 
         try {
             //Builds the request
-            String request = "wallet btc " + currentLoggedUser;
-            sendRequest(request);
-            readResponse();
+            String request = "wallet btc";
+            sendRequest(request, BinaryRequest.WALLET_BTC);
 
             //Reads the response code
-            int responseId = buffer.getInt();
+            int responseId = readResponseCode();
             if (responseId == -1) System.err.println("< Invalid command. Use 'wallet' or 'wallet btc'");
             if (responseId == 0) {
                 String wallet = extractResponse();
@@ -871,6 +1065,136 @@ public class Winsome {
         }
     }
 
+    /**
+     * Executes more commands with a single batch request. The commands use the same syntax
+     * of the command line and can be: post, delete, follow, unfollow, rate, rewin and comment
+     * @param commands commands to execute
+     */
+    public void batch(List<String> commands) {
+        if (socketChannel == null || currentLoggedUser == null) {
+            System.err.println("< There is no user logged in");
+            return;
+        }
+
+        if (commands.isEmpty()) {
+            System.err.println("< There are no commands to execute");
+            return;
+        }
+
+        //Builds the sub-requests
+        StringBuilder textRequest = new StringBuilder("batch");
+        List<byte[]> binarySubRequests = new ArrayList<>();
+        for (String command : commands) {
+            String []args = parseBatchCommand(command);
+            if (args == null) {
+                System.err.println("< Invalid command in the batch: " + command);
+                return;
+            }
+
+            if (binaryProtocol) {
+                byte opcode = switch (args[0]) {
+                    case "post" -> BinaryRequest.POST;
+                    case "delete" -> BinaryRequest.DELETE;
+                    case "follow" -> BinaryRequest.FOLLOW;
+                    case "unfollow" -> BinaryRequest.UNFOLLOW;
+                    case "rate" -> BinaryRequest.RATE;
+                    case "rewin" -> BinaryRequest.REWIN;
+                    default -> BinaryRequest.COMMENT;
+                };
+
+                //The sub-requests are identified by their position in the batch
+                String []fields = Arrays.copyOfRange(args, 1, args.length);
+                try {
+                    binarySubRequests.add(BinaryRequest.encode(binarySubRequests.size(), opcode, fields));
+                } catch (NumberFormatException e) {
+                    //The server answers to this sub-request as malformed
+                    binarySubRequests.add(BinaryRequest.encodeWithoutFields(binarySubRequests.size(), opcode));
+                }
+            } else {
+                textRequest.append("\n");
+                //The post and the comment requests separate their fields with '/'
+                if (args[0].equals("post") || args[0].equals("comment"))
+                    textRequest.append(args[0]).append(" /").append(String.join("/", Arrays.asList(args).subList(1, args.length)));
+                else
+                    textRequest.append(String.join(" ", args));
+            }
+        }
+
+        try {
+            if (binaryProtocol) {
+                int requestId = nextRequestId++;
+                sendRequest(BinaryRequest.encodeBatch(requestId, binarySubRequests));
+                pendingRequests.add(requestId);
+            } else {
+                sendRequest(textRequest.toString().getBytes(StandardCharsets.UTF_8));
+            }
+
+            //Gets the response code
+            int responseId = readResponseCode();
+            if (responseId != 0) {
+                if (responseId != SERVER_BUSY) System.err.println("< Invalid batch request");
+                return;
+            }
+
+            //Prints the response code of every command
+            JsonArray responseCodes = JsonParser.parseString(extractResponse()).getAsJsonArray();
+            for (int i = 0; i < responseCodes.size(); i++) {
+                int code = responseCodes.get(i).getAsInt();
+                if (code == 0)
+                    System.out.println("< " + commands.get(i) + ": done");
+                else
+                    System.err.println("< " + commands.get(i) + ": failed with code " + code);
+            }
+        } catch (IOException e) {
+            System.err.println("Error while executing the batch (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * Parses a command of a batch request
+     * @param command command with the same syntax of the command line
+     * @return the name of the command followed by its fields,
+     * null if the command is not valid
+     */
+    private String[] parseBatchCommand(String command) {
+        String []args = command.split(" ");
+
+        switch (args[0]) {
+            case "follow", "unfollow", "delete", "rewin" -> {
+                if (args.length != 2) return null;
+
+                return new String[]{args[0], args[1]};
+            }
+
+            case "rate" -> {
+                if (args.length != 3) return null;
+
+                return new String[]{args[0], args[1], args[2]};
+            }
+
+            case "comment" -> {
+                //Gets the comment between the quotes
+                int openingQuoteIndex = command.indexOf("\"");
+                int closingQuoteIndex = command.lastIndexOf("\"");
+                if (args.length < 3 || openingQuoteIndex == closingQuoteIndex) return null;
+
+                return new String[]{args[0], args[1], command.substring(openingQuoteIndex + 1, closingQuoteIndex)};
+            }
+
+            case "post" -> {
+                //Gets the title and the content between the quotes
+                String []parts = command.split("\"");
+                if (parts.length < 4) return null;
+
+                return new String[]{args[0], parts[1], parts[3]};
+            }
+
+            default -> {
+                return null;
+            }
+        }
+    }
+
     /**
      * Registers a new user to winsome
      * @param username username of the user to register
@@ -916,7 +1240,7 @@ public class Winsome {
                 socketChannel = null;
             }
 
-            if (currentLoggedUser != null) {
+            if (currentLoggedUser != null && followerCallback != null) {
                 //Unregisters from the callback
                 serverCallbackHandler.unregisterForCallback(currentLoggedUser);
             }